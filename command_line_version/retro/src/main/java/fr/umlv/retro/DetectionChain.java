@@ -2,6 +2,7 @@ package fr.umlv.retro;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 import org.objectweb.asm.ClassVisitor;
 
@@ -15,21 +16,20 @@ import fr.umlv.retro.classvisitors.visitors.Detector;
 public class DetectionChain {
 	
 	/**
-	 * Creates a chain of Detection
+	 * Creates a chain of Detection in which each event is given once to a DetectorMultiplexer, which gives
+	 * it to the detectors which need it and then to the end of the chain. The methods without feature skip
+	 * the detectors, so a ClassWriter created from the ClassReader copies them without decoding them,
+	 * and they are not decoded at all when there is no end.
 	 * @param detectors the list of the detectors which compose transformation chain
-	 * @return the first Detector
+	 * @param end the visitor which receives the class after the detectors, or null
+	 * @param featureMethods the name followed by the descriptor of the methods which may contain a feature
+	 * @return the first visitor of the chain
 	 */
-	public static ClassVisitor createDetectionChain(List<Detector> detectors) {
+	public static ClassVisitor createDetectionChain(List<Detector> detectors, ClassVisitor end, Set<String> featureMethods) {
 		Objects.requireNonNull(detectors);
 		if (detectors.size() < 1) {
 			throw new IllegalArgumentException("List size of detectors can't be less than 0");
 		}
-		var actual = detectors.get(0);
-		for (int i = 1; i < detectors.size(); i++) {
-			Detector actualDetector = detectors.get(i);
-			actualDetector.SetClassVisitor(actual);
-			actual = actualDetector;
-		}
-		return actual;
+		return new DetectorMultiplexer(detectors, end, featureMethods);
 	}
 }
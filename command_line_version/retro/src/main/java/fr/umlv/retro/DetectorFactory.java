@@ -0,0 +1,69 @@
+package fr.umlv.retro;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import fr.umlv.retro.classvisitors.visitors.ConcatDetector;
+import fr.umlv.retro.classvisitors.visitors.Detector;
+import fr.umlv.retro.classvisitors.visitors.LambdaDetector;
+import fr.umlv.retro.classvisitors.visitors.NestmateDetector;
+import fr.umlv.retro.classvisitors.visitors.RecordDetector;
+import fr.umlv.retro.classvisitors.visitors.TryWithRessourcesDetector;
+import fr.umlv.retro.features.FeaturesObserver;
+import fr.umlv.retro.features.FeaturesStocker;
+
+/**
+ * Creates the detectors of the features. The detectors keep the state of the class they visit, so each
+ * thread which observes classes has its own detectors, created once with the features stocker they notify.
+ * @author PJBesnard
+ *
+ */
+public class DetectorFactory {
+	private static final ThreadLocal<DetectorFactory> CURRENT = ThreadLocal.withInitial(DetectorFactory::new);
+
+	private final FeaturesStocker stocker = new FeaturesStocker();
+	private final List<Detector> detectors = createDetectors(stocker);
+
+	/**
+	 * Creates the detectors of the current thread
+	 */
+	private DetectorFactory() {
+	}
+
+	/**
+	 * Creates the detectors of the features, all notifying the same observer
+	 * @param observer the observer of the detectors
+	 * @return the list of the detectors
+	 */
+	public static List<Detector> createDetectors(FeaturesObserver observer) {
+		Objects.requireNonNull(observer);
+		List<Detector> detectors = List.of(new ConcatDetector(), new LambdaDetector(), new NestmateDetector(), new RecordDetector(), new TryWithRessourcesDetector());
+		detectors.forEach(d -> d.addObserver(observer));
+		return new ArrayList<>(detectors);
+	}
+
+	/**
+	 * Gets the detectors of the current thread, they are created the first time the thread asks them
+	 * @return the detectors of the current thread
+	 */
+	public static DetectorFactory current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Gets the detectors, they must only be used by the thread which owns them
+	 * @return the list of the detectors
+	 */
+	public List<Detector> getDetectors() {
+		return detectors;
+	}
+
+	/**
+	 * Gets the features stocker notified by the detectors
+	 * @return the features stocker of the detectors
+	 */
+	public FeaturesStocker getStocker() {
+		return stocker;
+	}
+}
@@ -0,0 +1,245 @@
+package fr.umlv.retro;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import fr.umlv.retro.classvisitors.visitors.Detector;
+import fr.umlv.retro.classvisitors.visitors.Detector.Event;
+
+/**
+ * Visitor which receives each event of a class once and gives it only to the detectors which need it,
+ * then to the visitor at the end of the chain. The bootstrap methods of the invokedynamic instructions
+ * are classified once per class, whatever the number of instructions which use them.
+ * @author PJBesnard
+ *
+ */
+public class DetectorMultiplexer extends ClassVisitor {
+	private static final int[] NONE = new int[0];
+
+	private final ClassVisitor end;
+	private final Detector[] detectors;
+	private final int[][] byEvent = new int[Event.values().length][];
+	private final Set<String> featureMethods;
+	private final Map<Handle, int[]> bootstraps = new HashMap<>();
+
+	/**
+	 * Creates a new DetectorMultiplexer
+	 * @param detectors the detectors which receive the events
+	 * @param end the visitor which receives the class after the detectors, or null
+	 * @param featureMethods the name followed by the descriptor of the methods which may contain a feature,
+	 * the other methods are given straight to the end
+	 */
+	public DetectorMultiplexer(List<Detector> detectors, ClassVisitor end, Set<String> featureMethods) {
+		super(Opcodes.ASM7, end);
+		this.end = end;
+		this.detectors = detectors.toArray(new Detector[0]);
+		this.featureMethods = Objects.requireNonNull(featureMethods);
+		for (Event event : Event.values()) {
+			List<Integer> interested = new ArrayList<>();
+			for (int i = 0; i < this.detectors.length; i++) {
+				if (this.detectors[i].getEvents().contains(event)) {
+					interested.add(i);
+				}
+			}
+			byEvent[event.ordinal()] = interested.stream().mapToInt(Integer::intValue).toArray();
+		}
+	}
+
+	/**
+	 * Gets the index of the detectors which need an event
+	 * @param event the kind of the event
+	 * @return the index of the detectors
+	 */
+	private int[] detectorsOf(Event event) {
+		return byEvent[event.ordinal()];
+	}
+
+	/**
+	 * Gives the beginning of the class to the interested detectors, based on ClassVisitor.visit
+	 */
+	@Override
+	public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+		bootstraps.clear();
+		for (int i : detectorsOf(Event.VISIT)) {
+			detectors[i].visit(version, access, name, signature, superName, interfaces);
+		}
+		super.visit(version, access, name, signature, superName, interfaces);
+	}
+
+	/**
+	 * Gives the nest host to the interested detectors, based on ClassVisitor.visitNestHost
+	 */
+	@Override
+	public void visitNestHost(String nestHost) {
+		for (int i : detectorsOf(Event.NEST)) {
+			detectors[i].visitNestHost(nestHost);
+		}
+		super.visitNestHost(nestHost);
+	}
+
+	/**
+	 * Gives the nest member to the interested detectors, based on ClassVisitor.visitNestMember
+	 */
+	@Override
+	public void visitNestMember(String nestMember) {
+		for (int i : detectorsOf(Event.NEST)) {
+			detectors[i].visitNestMember(nestMember);
+		}
+		super.visitNestMember(nestMember);
+	}
+
+	/**
+	 * Gives the method to the interested detectors if it may contain a feature, based on ClassVisitor.visitMethod
+	 */
+	@Override
+	public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+		MethodVisitor next = end == null ? null : end.visitMethod(access, name, descriptor, signature, exceptions);
+		if (!featureMethods.contains(name + descriptor)) {
+			return next;
+		}
+		MethodVisitor[] visitors = new MethodVisitor[detectors.length];
+		for (int i : detectorsOf(Event.METHOD)) {
+			visitors[i] = detectors[i].visitMethod(access, name, descriptor, signature, exceptions);
+		}
+		return new MultiplexMethodVisitor(next, visitors);
+	}
+
+	/**
+	 * Gives the end of the class to the interested detectors, based on ClassVisitor.visitEnd
+	 */
+	@Override
+	public void visitEnd() {
+		for (int i : detectorsOf(Event.END)) {
+			detectors[i].visitEnd();
+		}
+		super.visitEnd();
+	}
+
+	/**
+	 * Gets the index of the detectors which accept a bootstrap method, computed once per class
+	 * @param bootstrapMethodHandle the bootstrap method
+	 * @return the index of the detectors
+	 */
+	private int[] detectorsOf(Handle bootstrapMethodHandle) {
+		return bootstraps.computeIfAbsent(bootstrapMethodHandle, handle -> {
+			int[] interested = detectorsOf(Event.INVOKE_DYNAMIC);
+			int count = 0;
+			int[] accepted = new int[interested.length];
+			for (int i : interested) {
+				if (detectors[i].acceptBootstrap(handle)) {
+					accepted[count++] = i;
+				}
+			}
+			return count == 0 ? NONE : Arrays.copyOf(accepted, count);
+		});
+	}
+
+	/**
+	 * Visitor which gives each event of a method to the method visitors of the interested detectors
+	 * @author PJBesnard
+	 *
+	 */
+	private class MultiplexMethodVisitor extends MethodVisitor {
+		private final MethodVisitor[] visitors;
+
+		/**
+		 * Creates a new MultiplexMethodVisitor
+		 * @param methodVisitor the MethodVisitor of the end of the chain, or null
+		 * @param visitors the method visitors of the detectors, by index of detector
+		 */
+		private MultiplexMethodVisitor(MethodVisitor methodVisitor, MethodVisitor[] visitors) {
+			super(Opcodes.ASM7, methodVisitor);
+			this.visitors = visitors;
+		}
+
+		/**
+		 * Gives the line number to the interested detectors, based on MethodVisitor.visitLineNumber
+		 */
+		@Override
+		public void visitLineNumber(int line, Label start) {
+			for (int i : detectorsOf(Event.LINE_NUMBER)) {
+				if (visitors[i] != null) {
+					visitors[i].visitLineNumber(line, start);
+				}
+			}
+			super.visitLineNumber(line, start);
+		}
+
+		/**
+		 * Gives the label to the interested detectors, based on MethodVisitor.visitLabel
+		 */
+		@Override
+		public void visitLabel(Label label) {
+			for (int i : detectorsOf(Event.LABEL)) {
+				if (visitors[i] != null) {
+					visitors[i].visitLabel(label);
+				}
+			}
+			super.visitLabel(label);
+		}
+
+		/**
+		 * Gives the jump instruction to the interested detectors, based on MethodVisitor.visitJumpInsn
+		 */
+		@Override
+		public void visitJumpInsn(int opcode, Label label) {
+			for (int i : detectorsOf(Event.JUMP)) {
+				if (visitors[i] != null) {
+					visitors[i].visitJumpInsn(opcode, label);
+				}
+			}
+			super.visitJumpInsn(opcode, label);
+		}
+
+		/**
+		 * Gives the try-catch block to the interested detectors, based on MethodVisitor.visitTryCatchBlock
+		 */
+		@Override
+		public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+			for (int i : detectorsOf(Event.TRY_CATCH)) {
+				if (visitors[i] != null) {
+					visitors[i].visitTryCatchBlock(start, end, handler, type);
+				}
+			}
+			super.visitTryCatchBlock(start, end, handler, type);
+		}
+
+		/**
+		 * Gives the method instruction to the interested detectors, based on MethodVisitor.visitMethodInsn
+		 */
+		@Override
+		public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+			for (int i : detectorsOf(Event.METHOD_INSN)) {
+				if (visitors[i] != null) {
+					visitors[i].visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+				}
+			}
+			super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+		}
+
+		/**
+		 * Gives the invokedynamic instruction to the detectors which accept its bootstrap method,
+		 * based on MethodVisitor.visitInvokeDynamicInsn
+		 */
+		@Override
+		public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+			for (int i : detectorsOf(bootstrapMethodHandle)) {
+				if (visitors[i] != null) {
+					visitors[i].visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+				}
+			}
+			super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+		}
+	}
+}
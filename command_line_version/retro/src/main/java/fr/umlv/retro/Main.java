@@ -1,76 +1,126 @@
 package fr.umlv.retro;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.ZipException;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 
+import fr.umlv.retro.cache.CachedClass;
+import fr.umlv.retro.cache.RetroCache;
+import fr.umlv.retro.classvisitors.updaters.LambdaLowerer;
 import fr.umlv.retro.classvisitors.updaters.VersionUpdater;
-import fr.umlv.retro.classvisitors.visitors.ConcatDetector;
 import fr.umlv.retro.classvisitors.visitors.Detector;
-import fr.umlv.retro.classvisitors.visitors.LambdaDetector;
-import fr.umlv.retro.classvisitors.visitors.NestmateDetector;
-import fr.umlv.retro.classvisitors.visitors.RecordDetector;
-import fr.umlv.retro.classvisitors.visitors.TryWithRessourcesDetector;
-import fr.umlv.retro.features.CodeFeature;
+import fr.umlv.retro.features.ClassFeatures;
+import fr.umlv.retro.features.ConcurrentFeaturesObserver;
+import fr.umlv.retro.features.Feature;
 import fr.umlv.retro.features.FeaturesStocker;
+import fr.umlv.retro.parsers.FeatureScanner;
+import fr.umlv.retro.parsers.DirectoryWatcher;
 import fr.umlv.retro.parsers.FileParser;
+import fr.umlv.retro.parsers.FrameParser;
+import fr.umlv.retro.parsers.IoPool;
+import fr.umlv.retro.parsers.MappedJarReader;
 import fr.umlv.retro.parsers.OptionsParser;
+import fr.umlv.retro.writers.ClassOutput;
+import fr.umlv.retro.writers.DirectoryOutput;
+import fr.umlv.retro.writers.FrameOutput;
+import fr.umlv.retro.writers.JarOutput;
 
 public class Main {
+	private static final String VERSION = "0.0.1-SNAPSHOT";
 
 	private String className;
+	private byte[] bytes;
 	private ClassReader reader;
-	private ClassWriter writer;
+	private ClassOutput output;
+	private RetroCache cache;
+	private String cacheKey;
+	private CachedClass cached;
+	private ClassFeatures features;
+	private FeaturesStocker detected;
+	private byte[] rewritten;
+	private Map<String, byte[]> lambdaClasses = Map.of();
+	private boolean lambdasLowered;
+	private PrintStream out;
 
-	public Main(String className) throws IOException {
-		reader = new ClassReader(Files.readAllBytes(Paths.get(className)));
+	public Main(String className, byte[] bytes, ClassOutput output, RetroCache cache) {
+		this(className, bytes, output, cache, System.out);
+	}
+
+	/**
+	 * Creates a class whose messages are printed on the given stream, like the buffer of its input
+	 * @param className the name of the class file
+	 * @param bytes the class file
+	 * @param output where the class is written
+	 * @param cache the cache of the already processed classes, or null
+	 * @param out the stream of the messages of the class
+	 */
+	public Main(String className, byte[] bytes, ClassOutput output, RetroCache cache, PrintStream out) {
+		reader = new ClassReader(bytes);
 		this.className = className;
-		this.writer = new ClassWriter(0);
+		this.bytes = bytes;
+		this.output = output;
+		this.cache = cache;
+		this.out = out;
 	}
 	
 	/**
-	 * verify if the target version is correct
+	 * Get the size of the class file
+	 * @return the number of bytes of the class file
+	 */
+	public int size() {
+		return bytes.length;
+	}
+
+	/**
+	 * verify if the target version is correct, only the kinds of features of the class are tested,
+	 * the lambdas don't forbid the target when they were all replaced by generated classes
 	 * @param parser the parser who read the file
-	 * @param featuresAvailable the available features 
-	 * @param obs the features stocker 
 	 */
-	private void verifyVersion(OptionsParser parser, Map<String, Integer> featuresAvailable, FeaturesStocker obs) {
+	private void verifyVersion(OptionsParser parser) {
 		int targetVersion = parser.getTarget();
 		if(targetVersion < 5 || targetVersion > 14) {
 			throw new IllegalArgumentException("Version " + targetVersion + " not supported");
 		}
-		for (CodeFeature f : obs.getFeatures()) {
-			if(featuresAvailable.get(f.getName()) > targetVersion) {
-				throw new IllegalArgumentException("Feature " + f.getName() + " has been implemented in Java " + featuresAvailable.get(f.getName()) + " but you asked " + targetVersion);
+		if (features.isEmpty()) {
+			return;
+		}
+		for (Feature feature : features.getKinds()) {
+			if(feature.getVersion() > targetVersion && !(feature == Feature.LAMBDA && lambdasLowered)) {
+				throw new IllegalArgumentException("Feature " + feature + " has been implemented in Java " + feature.getVersion() + " but you asked " + targetVersion);
 			}
 		}
 	}
 	
 	/**
-	 * show informations about asked features
+	 * show informations about asked features of the class
 	 * @param parser the parser who read the file
-	 * @param featuresAvailable the available features 
-	 * @param obs the features stocker 
 	 */
-	private void showInfoFeatures(OptionsParser parser, Map<String, Integer> featuresAvailable, FeaturesStocker obs) {
-		List<String> features = parser.featuresAsk();
-		if(features.size() == 0) {
-			features = List.of("LAMBDA", "CONCATENATION", "NESTMATES", "RECORD", "TRY_WITH_RESOURCES");
-		}
-		for (String s : features) {
-			if(featuresAvailable.get(s) == null) {
-				throw new IllegalArgumentException("feature " + s + " doesn't exist");
+	private void showInfoFeatures(OptionsParser parser) {
+		List<Feature> asked = Feature.all();
+		if(parser.featuresAsk().size() != 0) {
+			asked = new ArrayList<>();
+			for (String s : parser.featuresAsk()) {
+				asked.add(Feature.of(s));
 			}
 		}
-		System.out.println(obs.getFeaturesLog(features));
+		String log = features.getFeaturesLog(asked);
+		if (!log.isEmpty()) {
+			out.println(log);
+		}
 	}
 	
 	/**
@@ -80,50 +130,175 @@ public class Main {
 		StringBuilder sb = new StringBuilder();
 		sb.append("Usage: retro <options> sourcefiles\n\t").append("where possible options include:\n\t")
 		.append("-target <release>\n\t Generate class files suitable for the specified Java SE release. Supported releases: 5, 6, 7, 8, 9, 10, 11, 12, 13")
-		.append("-features <features>(,<features>)*\n\t target will use only the specified features or all if option not call").append("-info\n\tshow detected features in file");
+		.append("-features <features>(,<features>)*\n\t target will use only the specified features or all if option not call").append("-info\n\tshow detected features in file")
+		.append("\n\tA jar retro-ified with -target is written as a jar of the same name in RetroTarget")
+		.append("\n\tBelow 8, the lambdas are replaced by generated classes written next to their class")
+		.append("-level <level>\n\tcompression level of the rewritten classes of a jar, from 0 (stored) to 9")
+		.append("-cache <directory>\n\treuse the features and the classes of the previous runs stocked in the directory")
+		.append("-watch\n\tafter the first run, retro-ify again the classes of the directories each time they change")
+		.append("\n\tSeveral jars, directories and .class can be given, they share the same workers and a summary of each one is shown at the end")
+		.append("-count\n\tshow the number of each detected feature in each file, faster than -info since the classes are read without their debug informations")
+		.append("-io <threads>\n\tread and write the class files of the directories on the given number of threads, the workers only detect and rewrite the classes")
+		.append("-buffer <megabytes>\n\tsize of the classes which can wait between the reading, the detection and the writing, 16 by default")
+		.append("-stream\n\tread classes prefixed by their length on the standard input instead of sourcefiles and write the classes and their features on the standard output");
 		System.out.println(sb.toString());
 	}
 	
 	/**
 	 * call all options specified by the user
 	 * @param parser the parser who read the file
-	 * @param featuresAvailable the available features 
-	 * @param obs the features stocker 
 	 * @throws IOException 
 	 */
-	public void callOptions(OptionsParser parser, Map<String, Integer> featuresAvailable, FeaturesStocker obs) throws IOException {
-		for (String s : parser.optionsAsk()) {
-			switch (s) {
-			case "-help": printHelp(); break;
-			case "-target": verifyVersion(parser, featuresAvailable, obs); writeNewClass(parser); break;
-			case "-info": showInfoFeatures(parser, featuresAvailable, obs); break;
-			default: break;
-			}
+	public void callOptions(OptionsParser parser) throws IOException {
+		if (parser.infoAsk()) {
+			showInfoFeatures(parser);
+		}
+		if (parser.helpAsk()) {
+			printHelp();
+		}
+		if (parser.targetAsk()) {
+			verifyVersion(parser);
+			writeNewClass();
 		}
 	}
 	
 	/**
-	 * Call all the specified observers on the class
+	 * Call all the specified observers on the class, or give to the features stocker the features
+	 * found by a previous run if the class is in the cache. When a new version is asked, the class is
+	 * rewritten during the same traversal, the result is only written if no feature forbids the target.
+	 * Below the version of the lambdas, they are replaced by generated classes, and the class is written
+	 * without the constant pool of the original class, whose invokedynamic entries the old versions reject,
+	 * and without frames before Java 6, which has none.
+	 * Only the methods which may contain a feature are decoded, the others are copied as is, and the
+	 * classes which can't contain any feature are not visited at all, only their version is patched.
+	 * A class which is not rewritten is visited without its frames, and without its debug informations
+	 * if only the counts of the features are asked. The features of the class are copied in columns from the
+	 * stocker of the thread and kept by the class until they are merged with the features of the other classes,
+	 * so the classes can be observed in parallel as long as each thread has its own observers.
+	 * @param parser the parser who read arguments
 	 * @param observers the list of the observers 
+	 * @param obs the features stocker notified by the observers, it only keeps the features of the class
 	 */
-	public void observeClass(List<Detector> observers) {
-		var multiTruc = DetectionChain.createDetectionChain(observers);
-		reader.accept(multiTruc, 0);
+	public void observeClass(OptionsParser parser, List<Detector> observers, FeaturesStocker obs) {
+		if (cache != null) {
+			cacheKey = cache.key(bytes);
+			cached = cache.load(cacheKey);
+		}
+		detected = new FeaturesStocker();
+		if (cached != null) {
+			cached.getFeatures().forEach(detected::onFeatureDetected);
+			rewritten = cached.getBytes();
+			return;
+		}
+		obs.clear();
+		obs.beginClass();
+		boolean newVersion = parser.targetAsk() && reader.readUnsignedShort(6) != 44 + parser.getTarget();
+		var scanner = new FeatureScanner(reader);
+		if (!scanner.mayContainFeatures()) {
+			if (newVersion) {
+				rewritten = VersionUpdater.patchVersion(bytes, parser.getTarget());
+			}
+		} else if (newVersion && parser.getTarget() < Feature.LAMBDA.getVersion()) {
+			var writer = new ClassWriter(0);
+			Detector updater = new VersionUpdater(parser.getTarget());
+			updater.SetClassVisitor(writer);
+			var lowerer = new LambdaLowerer(parser.getTarget(), scanner.methodsWithFeatureCode());
+			lowerer.SetClassVisitor(updater);
+			reader.accept(DetectionChain.createDetectionChain(observers, lowerer, scanner.methodsWithFeatureCode()),
+					parser.getTarget() < 6 ? ClassReader.SKIP_FRAMES : 0);
+			rewritten = writer.toByteArray();
+			lambdaClasses = lowerer.getLambdaClasses();
+			lambdasLowered = lowerer.isLowered();
+		} else if (newVersion) {
+			var writer = new ClassWriter(reader, 0);
+			Detector updater = new VersionUpdater(parser.getTarget());
+			updater.SetClassVisitor(writer);
+			reader.accept(DetectionChain.createDetectionChain(observers, updater, scanner.methodsWithFeatureCode()), 0);
+			rewritten = writer.toByteArray();
+		} else {
+			var multiTruc = DetectionChain.createDetectionChain(observers, null, scanner.methodsWithFeatureCode());
+			reader.accept(multiTruc, ClassReader.SKIP_FRAMES | (skipLines(parser) ? ClassReader.SKIP_DEBUG : 0));
+		}
+		detected.addAll(obs);
+	}
+
+	/**
+	 * Give the features of the class to the features stocker of the input, the class then only
+	 * keeps the view of its features in this stocker
+	 * @param obs the features stocker of the input
+	 */
+	private void mergeFeatures(FeaturesStocker obs) {
+		obs.beginClass();
+		obs.addAll(detected);
+		features = obs.endClass();
+		detected = null;
 	}
 	
 	/**
-	 * Write a new class with the target version
+	 * Test if the line numbers of the features are useless, when only their counts are asked
 	 * @param parser the parser who read arguments
+	 * @return True if -count is asked without -info, False either
+	 */
+	private static boolean skipLines(OptionsParser parser) {
+		return parser.countAsk() && !parser.infoAsk();
+	}
+
+	/**
+	 * Write the class rewritten with the target version, the class is copied as is if it already has the target version.
+	 * The classes generated for its lambdas are written after it, next to its class file, or under their internal
+	 * name when the class has no file, like the classes read on the standard input.
 	 * @throws IOException if the file can't be write
 	 */
-	public void writeNewClass(OptionsParser parser) throws IOException {
-		Detector d = new VersionUpdater(parser.getTarget());
-		d.SetClassVisitor(writer);
-		reader.accept(d, 0);
-		FileOutputStream os = new FileOutputStream("RetroTarget/" + className);
-		os.write(writer.toByteArray());
-		os.close();
-		System.out.println("Class " + className + " retro-ified successfully, you can check the result in \"RetroTarget\" repertory");
+	public void writeNewClass() throws IOException {
+		if (rewritten == null) {
+			output.copy(className, bytes);
+		} else {
+			output.write(className, rewritten);
+		}
+		String prefix = className.endsWith(".class") ? className.substring(0, className.length() - ".class".length()) : reader.getClassName();
+		for (Map.Entry<String, byte[]> lambda : lambdaClasses.entrySet()) {
+			output.write(prefix + lambda.getKey().substring(reader.getClassName().length()) + ".class", lambda.getValue());
+		}
+		out.println("Class " + className + " retro-ified successfully, you can check the result in \"RetroTarget\" repertory");
+	}
+	
+	/**
+	 * Stock the features and the rewritten class in the cache, if the class was not already in it.
+	 * A class whose lambdas were replaced is not stocked, the cache doesn't keep the generated classes.
+	 * A failure of the cache is only reported, the class is already written.
+	 */
+	public void saveInCache() {
+		if (cache != null && cached == null && lambdaClasses.isEmpty()) {
+			cache.store(cacheKey, features.getFeatures(), rewritten);
+		}
+	}
+	
+	/**
+	 * Detect the features of a class with the detectors of the current thread, call all options on it
+	 * and save the result in the cache
+	 * @param classwriter the class to process
+	 * @param parser the parser who read arguments
+	 * @param obs the features stocker argument
+	 * @throws IOException if the class can't be written
+	 */
+	private static void processClass(Main classwriter, OptionsParser parser, FeaturesStocker obs) throws IOException {
+		DetectorFactory detectors = DetectorFactory.current();
+		classwriter.observeClass(parser, detectors.getDetectors(), detectors.getStocker());
+		applyClass(classwriter, parser, obs);
+	}
+
+	/**
+	 * Give the features of an observed class to the features stocker, call all options on it and
+	 * save the result in the cache
+	 * @param classwriter the observed class
+	 * @param parser the parser who read arguments
+	 * @param obs the features stocker argument
+	 * @throws IOException if the class can't be written
+	 */
+	static void applyClass(Main classwriter, OptionsParser parser, FeaturesStocker obs) throws IOException {
+		classwriter.mergeFeatures(obs);
+		classwriter.callOptions(parser);
+		classwriter.saveInCache();
 	}
 	
 	/**
@@ -144,20 +319,263 @@ public class Main {
 	}
 	
 	/**
-	 * Read the file and call the features on it 
+	 * Read the file and call the features on it, the classes are observed in parallel on the pool
+	 * @param file the jar, directory or .class to read
 	 * @param parser the parser who read arguments
-	 * @param observers the observer which contain the detectors
-	 * @param featuresAvailable the available features
 	 * @param obs the features stocker argument
+	 * @param cache the cache of the already processed classes, or null
+	 * @param pool the pool shared by all the inputs
+	 * @param io the pool which reads and writes the class files of the directories, or null
+	 * @param out the stream of the messages of the input
+	 * @return the number of classes read
 	 * @throws IOException if the file can't be read
 	 */
-	private static void fileRead(OptionsParser parser, List<Detector> observers, Map<String, Integer> featuresAvailable, FeaturesStocker obs) throws IOException {
-		FileParser fp = new FileParser();
-		List<String> files = fp.readFile(parser.getFile());
-		for (String f : files) {
-			Main classwriter = new Main(f);
-			classwriter.observeClass(observers);
-			classwriter.callOptions(parser, featuresAvailable, obs);
+	private static int fileRead(String file, OptionsParser parser, FeaturesStocker obs, RetroCache cache, ForkJoinPool pool, IoPool io, PrintStream out) throws IOException {
+		if (file.endsWith(".jar") && parser.targetAsk()) {
+			int classes = jarRead(file, parser, obs, cache, pool, out);
+			if (classes >= 0) {
+				return classes;
+			}
+		}
+		int[] classes = { 0 };
+		FileParser fp = new FileParser(pool, io, parser.getBuffer());
+		try (ClassOutput output = new DirectoryOutput("RetroTarget", io, parser.getBuffer());
+				var processor = new ParallelProcessor(pool, parser, obs, parser.getBuffer())) {
+			fp.readFile(file, (className, bytes) -> {
+				classes[0]++;
+				processor.process(new Main(className, bytes, output, cache, out));
+			});
+			processor.finish();
+		}
+		return classes[0];
+	}
+
+	/**
+	 * Retro-ify a jar into a jar of the same name in RetroTarget, the resources and the classes which are
+	 * not rewritten are copied without being inflated, in the order of the jar. The jar is only replaced
+	 * if all of its classes were retro-ified.
+	 * @param file the jar to read
+	 * @param parser the parser who read arguments
+	 * @param obs the features stocker argument
+	 * @param cache the cache of the already processed classes, or null
+	 * @param pool the pool shared by all the inputs
+	 * @param out the stream of the messages of the jar
+	 * @return the number of classes read, or -1 if the jar can't be mapped and must be read as loose classes
+	 * @throws IOException if the jar can't be read or written
+	 */
+	private static int jarRead(String file, OptionsParser parser, FeaturesStocker obs, RetroCache cache, ForkJoinPool pool, PrintStream out) throws IOException {
+		MappedJarReader jarReader;
+		try {
+			jarReader = new MappedJarReader(file);
+		} catch (ZipException e) {
+			return -1;
+		}
+		String jarName = "RetroTarget/" + Paths.get(file).getFileName();
+		int[] classes = { 0 };
+		try (jarReader; JarOutput output = new JarOutput(jarName, jarReader, parser.getLevel(), pool, parser.getBuffer());
+				var processor = new ParallelProcessor(pool, parser, obs, parser.getBuffer())) {
+			jarReader.readEntries(pool, parser.getBuffer(), (record, bytes) -> {
+				if (bytes == null) {
+					processor.then(() -> output.copy(record));
+					return;
+				}
+				classes[0]++;
+				processor.process(new Main(record.getName(), bytes, output, cache, out));
+			});
+			processor.finish();
+			output.finish();
+		}
+		return classes[0];
+	}
+
+	/**
+	 * Creates the counts of each kind of feature of a summary
+	 * @param obs the features to count
+	 * @return the counts of the kinds of features found, or an empty string if there is no feature
+	 */
+	private static String counts(FeaturesStocker obs) {
+		StringJoiner sj = new StringJoiner(", ", " (", ")").setEmptyValue("");
+		for (Feature feature : Feature.all()) {
+			if (obs.count(feature) != 0) {
+				sj.add(feature + " " + obs.count(feature));
+			}
+		}
+		return obs.size() + " features" + sj;
+	}
+
+	/**
+	 * Retro-ify an input with its own features stocker, the failures are reported
+	 * without stopping the other inputs. The features of the input are then added to the total of the run.
+	 * @param file the jar, directory or .class to read
+	 * @param parser the parser who read arguments
+	 * @param cache the cache of the already processed classes, or null
+	 * @param pool the pool shared by all the inputs
+	 * @param io the pool which reads and writes the class files of the directories, or null
+	 * @param total the features of all the inputs, notified by the threads of all the inputs
+	 * @param out the stream of the messages of the input
+	 * @return the summary of the input
+	 */
+	private static String inputRead(String file, OptionsParser parser, RetroCache cache, ForkJoinPool pool, IoPool io, ConcurrentFeaturesObserver total, PrintStream out) {
+		var obs = new FeaturesStocker();
+		int classes;
+		try {
+			classes = fileRead(file, parser, obs, cache, pool, io, out);
+		} catch (IOException e) {
+			out.println("creation failed, file not found");
+			return file + ": failed, " + e.getMessage();
+		} catch (IllegalArgumentException e) {
+			out.println(e.getMessage());
+			return file + ": failed, " + e.getMessage();
+		}
+		total.addAll(obs);
+		return file + ": " + classes + " classes, " + counts(obs);
+	}
+
+	/**
+	 * Gets where an input is written in RetroTarget, the jar of the same name for a jar, the same path for
+	 * a directory or a .class
+	 * @param file the jar, directory or .class
+	 * @return the path of the output of the input
+	 */
+	private static Path outputOf(String file) {
+		if (file.endsWith(".jar")) {
+			return Paths.get("RetroTarget", Paths.get(file).getFileName().toString());
+		}
+		return Paths.get("RetroTarget", Paths.get(file).normalize().toString()).normalize();
+	}
+
+	/**
+	 * Find the input whose output is also written by a previous input, two jars collide if they have the
+	 * same name and two directories or .class if one contains the other
+	 * @param files the inputs, in the order of the arguments
+	 * @param index the index of the input to check
+	 * @return the previous input written in the same place, or null if there is none
+	 */
+	private static String collision(List<String> files, int index) {
+		String file = files.get(index);
+		Path output = outputOf(file);
+		for (int i = 0; i < index; i++) {
+			String previous = files.get(i);
+			Path other = outputOf(previous);
+			if (file.endsWith(".jar") != previous.endsWith(".jar")) {
+				continue;
+			}
+			if (output.startsWith(other) || other.startsWith(output)) {
+				return previous;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Retro-ify all the inputs on the shared pool, one task per input, and print a summary of each input
+	 * in the order of the arguments when there are several inputs or when -count is asked, followed by the
+	 * total of the inputs when there are several inputs. With -target, an input which would be written in
+	 * the same place as a previous input fails without being read.
+	 * When there are several inputs, the messages of each input are kept until it ends and printed in the
+	 * order of the arguments, so the messages of the inputs read at the same time are not mixed.
+	 * @param parser the parser who read arguments
+	 * @param cache the cache of the already processed classes, or null
+	 * @param pool the pool shared by all the inputs
+	 * @param io the pool which reads and writes the class files of the directories, or null
+	 */
+	private static void filesRead(OptionsParser parser, RetroCache cache, ForkJoinPool pool, IoPool io) {
+		var total = new ConcurrentFeaturesObserver();
+		List<ForkJoinTask<String>> tasks = new ArrayList<>();
+		List<ByteArrayOutputStream> buffers = new ArrayList<>();
+		List<String> files = parser.getFiles();
+		for (int i = 0; i < files.size(); i++) {
+			String file = files.get(i);
+			var buffer = new ByteArrayOutputStream();
+			PrintStream out = files.size() == 1 ? System.out : new PrintStream(buffer, true);
+			buffers.add(buffer);
+			String previous = parser.targetAsk() ? collision(files, i) : null;
+			if (previous != null) {
+				String message = "written in the same place as " + previous;
+				out.println(file + " is " + message);
+				tasks.add(pool.submit(() -> file + ": failed, " + message));
+				continue;
+			}
+			tasks.add(pool.submit(() -> inputRead(file, parser, cache, pool, io, total, out)));
+		}
+		List<String> summaries = new ArrayList<>();
+		for (int i = 0; i < tasks.size(); i++) {
+			summaries.add(tasks.get(i).join());
+			System.out.print(buffers.get(i));
+		}
+		if (summaries.size() > 1 || parser.countAsk()) {
+			System.out.println("Summary:");
+			summaries.forEach(System.out::println);
+		}
+		if (summaries.size() > 1) {
+			System.out.println("Total: " + counts(total.merge()));
+		}
+	}
+
+	/**
+	 * Watch the directories and retro-ify again each class created or modified, the detectors stay loaded
+	 * between two changes. The features are reported for each changed class only, a class which can't be
+	 * read or retro-ified, like a class still being written, is reported and the watch goes on. The classes
+	 * are written before their message is shown, so a failed write is reported for its own class.
+	 * RetroTarget is not watched, so its classes are not retro-ified again.
+	 * @param parser the parser who read arguments
+	 * @param cache the cache of the already processed classes, or null
+	 * @throws IOException if a directory can't be watched
+	 * @throws InterruptedException if the watch is interrupted
+	 */
+	private static void watchRead(OptionsParser parser, RetroCache cache) throws IOException, InterruptedException {
+		List<String> directories = new ArrayList<>();
+		parser.getFiles().stream().filter(file -> Files.isDirectory(Paths.get(file))).forEach(directories::add);
+		if (directories.isEmpty()) {
+			throw new IllegalArgumentException("-watch needs at least one directory");
+		}
+		var obs = new FeaturesStocker();
+		System.out.println("Watching " + String.join(", ", directories) + " for changes");
+		try (DirectoryWatcher watcher = new DirectoryWatcher(directories, Paths.get("RetroTarget")); ClassOutput output = new DirectoryOutput("RetroTarget")) {
+			watcher.watch((className, bytes) -> {
+				obs.clear();
+				try {
+					processClass(new Main(className, bytes, output, cache), parser, obs);
+				} catch (IllegalArgumentException e) {
+					System.out.println(className + ": " + e.getMessage());
+				} catch (IOException | RuntimeException e) {
+					System.out.println(className + ": failed, " + e);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Read classes as frames on the standard input and write the retro-ified classes and their features
+	 * as frames on the standard output, the messages are written on the error output until the end of the run.
+	 * A class which can't be parsed or retro-ified gets a frame without class with the reason, and the next
+	 * frames are still read.
+	 * @param parser the parser who read arguments
+	 * @param cache the cache of the already processed classes, or null
+	 * @throws IOException if the frames can't be read or written
+	 */
+	private static void streamRead(OptionsParser parser, RetroCache cache) throws IOException {
+		var obs = new FeaturesStocker();
+		PrintStream console = System.out;
+		System.setOut(System.err);
+		try (FrameOutput output = new FrameOutput(console)) {
+			new FrameParser().readFrames(System.in, (className, bytes) -> {
+				obs.clear();
+				String failure = null;
+				try {
+					processClass(new Main(className, bytes, output, cache), parser, obs);
+				} catch (IllegalArgumentException e) {
+					failure = String.valueOf(e.getMessage());
+				} catch (IOException e) {
+					failure = "failed, " + e;
+				} catch (RuntimeException e) {
+					failure = "invalid class file, " + e;
+				}
+				if (failure != null) {
+					output.discardClasses();
+				}
+				output.endFrame(failure == null ? "no class written without -target" : failure, obs.getFeatures());
+			});
 		}
 	}
 
@@ -165,20 +583,34 @@ public class Main {
 		try {
 			OptionsParser parser = new OptionsParser();
 			optionsCall(args, parser);
-			new File("RetroTarget/").mkdirs();
-			List<Detector> detectors = List.of(new ConcatDetector(), new LambdaDetector(), new NestmateDetector(), new RecordDetector(), new TryWithRessourcesDetector());
-			var obs = new FeaturesStocker();
-			detectors.forEach(d -> d.addObserver(obs));
-			Map<String, Integer> featuresAvailable = Map.of("LAMBDA", 8, "CONCATENATION", 9, "NESTMATES", 11, "RECORD", 14, "TRY_WITH_RESOURCES", 7);
-			List<Detector> observers = new ArrayList<>();
-			detectors.forEach(d -> observers.add(d));
+			ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+			IoPool io = parser.getIoThreads() > 0 ? new IoPool(parser.getIoThreads()) : null;
 			try {
-				fileRead(parser, observers, featuresAvailable, obs);
+				RetroCache cache = null;
+				if (parser.getCacheDirectory() != null) {
+					cache = new RetroCache(parser.getCacheDirectory(), VERSION, parser.getTarget(), parser.featuresAsk(), !skipLines(parser));
+				}
+				if (parser.optionsAsk().contains("-stream")) {
+					streamRead(parser, cache);
+					return;
+				}
+				new File("RetroTarget/").mkdirs();
+				filesRead(parser, cache, pool, io);
+				if (parser.optionsAsk().contains("-watch")) {
+					watchRead(parser, cache);
+				}
 			} catch (IOException e) {
 				System.out.println("creation failed, file not found");
+			} catch (InterruptedException e) {
+				System.out.println("watch interrupted");
+			} finally {
+				pool.shutdown();
+				if (io != null) {
+					io.close();
+				}
 			}
 		} catch (Exception e) {
 			System.out.println(e.getMessage());
 		}
 	}
-}
\ No newline at end of file
+}
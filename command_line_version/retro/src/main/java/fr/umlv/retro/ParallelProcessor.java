@@ -0,0 +1,137 @@
+package fr.umlv.retro;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import fr.umlv.retro.features.FeaturesStocker;
+import fr.umlv.retro.parsers.OptionsParser;
+
+/**
+ * Observes the classes of an input on the worker threads of a pool, each worker with its own detectors,
+ * and applies the options on the classes in the order they were given, on the calling thread. So the
+ * messages, the written classes and the features stocker are the same as with a sequential run.
+ * The classes are observed ahead of the class being applied as long as their bytes fit in the buffer.
+ * @author PJBesnard
+ *
+ */
+public class ParallelProcessor implements AutoCloseable {
+	private final ForkJoinPool pool;
+	private final OptionsParser parser;
+	private final FeaturesStocker obs;
+	private final int buffer;
+	private final ArrayDeque<Step> steps = new ArrayDeque<>();
+	private final ArrayDeque<Integer> sizes = new ArrayDeque<>();
+	private long pending;
+
+	/**
+	 * Step which has to be applied in the order of the input
+	 */
+	@FunctionalInterface
+	public interface Step {
+
+		/**
+		 * Apply the step on the calling thread
+		 * @throws IOException if the step can't be applied
+		 */
+		void apply() throws IOException;
+
+		/**
+		 * Cancel the work of the step which is not started yet
+		 */
+		default void cancel() {
+		}
+	}
+
+	/**
+	 * Creates a new ParallelProcessor
+	 * @param pool the pool which observes the classes
+	 * @param parser the parser who read arguments
+	 * @param obs the features stocker of the input, which receives the features in the order of the classes
+	 * @param buffer the number of bytes of the classes which can be observed ahead
+	 */
+	public ParallelProcessor(ForkJoinPool pool, OptionsParser parser, FeaturesStocker obs, int buffer) {
+		if (buffer < 1) {
+			throw new IllegalArgumentException("The buffer must be greater than 0");
+		}
+		this.pool = Objects.requireNonNull(pool);
+		this.parser = Objects.requireNonNull(parser);
+		this.obs = Objects.requireNonNull(obs);
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Add a step, the oldest steps are applied while the bytes of the steps waiting don't fit in the buffer
+	 * @param step the step to add
+	 * @param size the number of bytes held by the step until it is applied
+	 * @throws IOException if the oldest step can't be applied
+	 */
+	private void add(Step step, int size) throws IOException {
+		steps.add(step);
+		sizes.add(size);
+		pending += size;
+		while (pending > buffer && steps.size() > 1) {
+			pending -= sizes.poll();
+			steps.poll().apply();
+		}
+	}
+
+	/**
+	 * Observe a class on a worker of the pool, the options are applied on it after the previous steps
+	 * @param main the class to process
+	 * @throws IOException if a previous step can't be applied
+	 */
+	public void process(Main main) throws IOException {
+		Objects.requireNonNull(main);
+		int size = main.size();
+		ForkJoinTask<Main> task = pool.submit(() -> {
+			DetectorFactory detectors = DetectorFactory.current();
+			main.observeClass(parser, detectors.getDetectors(), detectors.getStocker());
+			return main;
+		});
+		add(new Step() {
+			@Override
+			public void apply() throws IOException {
+				Main.applyClass(task.join(), parser, obs);
+			}
+
+			@Override
+			public void cancel() {
+				task.cancel(false);
+			}
+		}, size);
+	}
+
+	/**
+	 * Run an action after the previous steps, on the calling thread
+	 * @param action the action to run, like the copy of a resource of a jar
+	 * @throws IOException if a previous step can't be applied
+	 */
+	public void then(Step action) throws IOException {
+		add(Objects.requireNonNull(action), 0);
+	}
+
+	/**
+	 * Apply all the steps waiting
+	 * @throws IOException if a step can't be applied
+	 */
+	public void finish() throws IOException {
+		while (!steps.isEmpty()) {
+			pending -= sizes.poll();
+			steps.poll().apply();
+		}
+	}
+
+	/**
+	 * Cancel the steps which are still waiting, when the input has failed
+	 */
+	@Override
+	public void close() {
+		steps.forEach(Step::cancel);
+		steps.clear();
+		sizes.clear();
+		pending = 0;
+	}
+}
@@ -0,0 +1,42 @@
+package fr.umlv.retro.cache;
+
+import java.util.List;
+import java.util.Objects;
+
+import fr.umlv.retro.features.CodeFeature;
+
+/**
+ * Stocks the result of a previous retro-ification of a class
+ * @author PJBesnard
+ *
+ */
+public class CachedClass {
+	private final List<CodeFeature> features;
+	private final byte[] bytes;
+
+	/**
+	 * Creates a new CachedClass
+	 * @param features the features detected in the class
+	 * @param bytes the rewritten class, or null if the class was not rewritten
+	 */
+	public CachedClass(List<CodeFeature> features, byte[] bytes) {
+		this.features = List.copyOf(Objects.requireNonNull(features));
+		this.bytes = bytes;
+	}
+
+	/**
+	 * gets the features detected in the class
+	 * @return the features detected in the class
+	 */
+	public List<CodeFeature> getFeatures() {
+		return features;
+	}
+
+	/**
+	 * gets the rewritten class
+	 * @return the rewritten class, or null if the class was not rewritten
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+}
@@ -0,0 +1,254 @@
+package fr.umlv.retro.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import fr.umlv.retro.features.CodeFeature;
+import fr.umlv.retro.features.Feature;
+
+/**
+ * Persistent cache of retro-ified classes. An entry is keyed by a hash of the class bytes, the target
+ * version, the asked features, the presence of the line numbers and the version of retro, and stocks the detected features and the
+ * rewritten class.
+ * @author PJBesnard
+ *
+ */
+public class RetroCache {
+	private static final int MAGIC = 0x52544332;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final Path directory;
+	private final byte[] settings;
+
+	/**
+	 * Creates a new RetroCache
+	 * @param directory the directory of the cache, created if needed
+	 * @param toolVersion the version of retro
+	 * @param target the target version, 0 if no target is asked
+	 * @param features the features asked by the user
+	 * @param lines False if the features are detected without the line numbers, True either
+	 * @throws IOException if the directory can't be created
+	 */
+	public RetroCache(String directory, String toolVersion, int target, List<String> features, boolean lines) throws IOException {
+		this.directory = Files.createDirectories(Paths.get(directory));
+		List<String> sortedFeatures = new ArrayList<>(features);
+		sortedFeatures.sort(null);
+		this.settings = (Objects.requireNonNull(toolVersion) + "|" + target + "|" + sortedFeatures + "|" + lines)
+				.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Compute the key of a class
+	 * @param bytes the content of the class file
+	 * @return the key of the class in the cache
+	 */
+	public String key(byte[] bytes) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(e);
+		}
+		digest.update(settings);
+		byte[] hash = digest.digest(bytes);
+		char[] key = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++) {
+			key[2 * i] = HEX[(hash[i] >> 4) & 0xF];
+			key[2 * i + 1] = HEX[hash[i] & 0xF];
+		}
+		return new String(key);
+	}
+
+	/**
+	 * Return the file of an entry of the cache
+	 * @param key the key of the entry
+	 * @return the file of the entry
+	 */
+	private Path path(String key) {
+		return directory.resolve(key.substring(0, 2)).resolve(key);
+	}
+
+	/**
+	 * Read a string written by writeString
+	 * @param in the input of the entry
+	 * @return the string read
+	 * @throws IOException if the entry can't be read
+	 */
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Write a string without the 64KB limit of writeUTF
+	 * @param out the output of the entry
+	 * @param s the string to write
+	 * @throws IOException if the entry can't be written
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Read a string written by writeNullableString
+	 * @param in the input of the entry
+	 * @return the string read, or null
+	 * @throws IOException if the entry can't be read
+	 */
+	private static String readNullableString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? readString(in) : null;
+	}
+
+	/**
+	 * Write a string which may be null
+	 * @param out the output of the entry
+	 * @param s the string to write, or null
+	 * @throws IOException if the entry can't be written
+	 */
+	private static void writeNullableString(DataOutputStream out, String s) throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null) {
+			writeString(out, s);
+		}
+	}
+
+	/**
+	 * Read a feature written by writeFeature
+	 * @param in the input of the entry
+	 * @return the feature read
+	 * @throws IOException if the entry can't be read
+	 */
+	private static CodeFeature readFeature(DataInputStream in) throws IOException {
+		int classVersion = in.readInt();
+		Feature name;
+		try {
+			name = Feature.valueOf(readString(in));
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Unknown feature", e);
+		}
+		String owner = readString(in);
+		String method = readNullableString(in);
+		String descriptor = readNullableString(in);
+		int line = in.readInt();
+		int size = in.readInt();
+		List<String> payload = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			payload.add(readString(in));
+		}
+		return new CodeFeature(classVersion, name, owner, method, descriptor, line, payload);
+	}
+
+	/**
+	 * Write the fields of a feature
+	 * @param out the output of the entry
+	 * @param feature the feature to write
+	 * @throws IOException if the entry can't be written
+	 */
+	private static void writeFeature(DataOutputStream out, CodeFeature feature) throws IOException {
+		out.writeInt(feature.getClassVersion());
+		writeString(out, feature.getName());
+		writeString(out, feature.getOwner());
+		writeNullableString(out, feature.getMethod());
+		writeNullableString(out, feature.getDescriptor());
+		out.writeInt(feature.getLine());
+		out.writeInt(feature.getPayload().size());
+		for (String s : feature.getPayload()) {
+			writeString(out, s);
+		}
+	}
+
+	/**
+	 * Load an entry of the cache
+	 * @param key the key of the entry
+	 * @return the cached class, or null if the class is not in the cache or the entry is unreadable
+	 */
+	public CachedClass load(String key) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path(key))))) {
+			if (in.readInt() != MAGIC) {
+				return null;
+			}
+			int count = in.readInt();
+			List<CodeFeature> features = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				features.add(readFeature(in));
+			}
+			int length = in.readInt();
+			byte[] bytes = null;
+			if (length >= 0) {
+				bytes = new byte[length];
+				in.readFully(bytes);
+			}
+			return new CachedClass(features, bytes);
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			System.out.println("Invalid cache entry " + key + ", the class is processed again");
+			return null;
+		}
+	}
+
+	/**
+	 * Stock an entry in the cache, the entry is written in a temporary file then moved so a reader
+	 * never sees a partial entry. The cache is only an optimization, an entry which can't be written is
+	 * reported on the error output and the class is processed again by the next run.
+	 * @param key the key of the entry
+	 * @param features the features detected in the class
+	 * @param bytes the rewritten class, or null if the class was not rewritten
+	 */
+	public void store(String key, List<CodeFeature> features, byte[] bytes) {
+		Path path = path(key);
+		Path temporary = null;
+		try {
+			Files.createDirectories(path.getParent());
+			temporary = Files.createTempFile(path.getParent(), key, ".tmp");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(features.size());
+				for (CodeFeature feature : features) {
+					writeFeature(out, feature);
+				}
+				out.writeInt(bytes == null ? -1 : bytes.length);
+				if (bytes != null) {
+					out.write(bytes);
+				}
+			}
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			System.err.println("Can't write the cache entry " + key + ": " + e);
+		} finally {
+			deleteTemporary(temporary);
+		}
+	}
+
+	/**
+	 * Delete the temporary file of an entry if it is still there
+	 * @param temporary the temporary file, or null if it was not created
+	 */
+	private static void deleteTemporary(Path temporary) {
+		if (temporary == null) {
+			return;
+		}
+		try {
+			Files.deleteIfExists(temporary);
+		} catch (IOException e) {
+			System.err.println("Can't delete " + temporary + ": " + e);
+		}
+	}
+}
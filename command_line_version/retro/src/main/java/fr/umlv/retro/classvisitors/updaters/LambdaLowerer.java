@@ -0,0 +1,495 @@
+package fr.umlv.retro.classvisitors.updaters;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import fr.umlv.retro.classvisitors.visitors.Detector;
+
+/**
+ * Replaces the lambdas by generated classes, for the versions which don't have invokedynamic.
+ * Each call site of the metafactory becomes a read of the static final instance of its class when the
+ * lambda captures nothing, and a call of a static factory which calls the constructor of its class
+ * when it captures values, so the lowered code allocates exactly when the invokedynamic did. The
+ * private methods of the class called by a lambda are reached through a static bridge of the class.
+ * @author LBillaut
+ *
+ */
+public class LambdaLowerer extends Detector {
+	private static final String INSTANCE = "INSTANCE";
+	private static final String FACTORY = "create";
+
+	private final int targetVersion;
+	private final Set<String> featureMethods;
+	private final Map<String, Integer> access = new HashMap<>();
+	private final List<Site> sites = new ArrayList<>();
+	private final Map<String, byte[]> lambdaClasses = new LinkedHashMap<>();
+	private String className;
+	private boolean isInterface;
+	private boolean lowered = true;
+
+	/**
+	 * Call site of the metafactory replaced by a generated class
+	 */
+	private static class Site {
+		private final String lambdaName;
+		private final String samName;
+		private final String descriptor;
+		private final Type sam;
+		private final Handle implementation;
+		private final Type instantiated;
+
+		/**
+		 * Creates a new Site
+		 * @param lambdaName the internal name of the generated class
+		 * @param samName the name of the method of the functional interface
+		 * @param descriptor the descriptor of the invokedynamic, the captured values and the functional interface
+		 * @param sam the erased type of the method of the functional interface
+		 * @param implementation the method called by the lambda
+		 * @param instantiated the type of the method of the functional interface at the call site
+		 */
+		Site(String lambdaName, String samName, String descriptor, Type sam, Handle implementation, Type instantiated) {
+			this.lambdaName = lambdaName;
+			this.samName = samName;
+			this.descriptor = descriptor;
+			this.sam = sam;
+			this.implementation = implementation;
+			this.instantiated = instantiated;
+		}
+	}
+
+	/**
+	 * Create a LambdaLowerer
+	 * @param targetVersion the target version, the generated classes get its class file version
+	 * @param featureMethods the name followed by the descriptor of the methods which may contain a lambda
+	 */
+	public LambdaLowerer(int targetVersion, Set<String> featureMethods) {
+		super();
+		this.targetVersion = targetVersion;
+		this.featureMethods = Objects.requireNonNull(featureMethods);
+	}
+
+	/**
+	 * Gets the classes generated for the lambdas of the class
+	 * @return the content of each generated class by its internal name, in the order of the call sites
+	 */
+	public Map<String, byte[]> getLambdaClasses() {
+		return lambdaClasses;
+	}
+
+	/**
+	 * Test if every call site of the metafactory was replaced, a lambda is kept when its class is an
+	 * interface, which can't have the bridges, when it calls a method of a super class with invokespecial
+	 * or when its bootstrap arguments are not the usual ones, like the lambdas of altMetafactory which are
+	 * serializable or have markers or bridges
+	 * @return True if no lambda is left in the class, False either
+	 */
+	public boolean isLowered() {
+		return lowered;
+	}
+
+	/**
+	 * Stocks the name and the kind of the class visited, based on ClassVisitor.visit
+	 */
+	@Override
+	public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+		this.className = name;
+		this.isInterface = (access & Opcodes.ACC_INTERFACE) != 0;
+		super.visit(version, access, name, signature, superName, interfaces);
+	}
+
+	/**
+	 * Stocks the access of the method, and visits it with a LowererMethodVisitor if it may contain a lambda,
+	 * based on ClassVisitor.visitMethod
+	 */
+	@Override
+	public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+		this.access.put(name + descriptor, access);
+		MethodVisitor next = super.visitMethod(access, name, descriptor, signature, exceptions);
+		if (!featureMethods.contains(name + descriptor)) {
+			return next;
+		}
+		return new LowererMethodVisitor(next);
+	}
+
+	/**
+	 * Generates the class of each lambda and the bridges they need, once the access of all the methods
+	 * of the class is known, based on ClassVisitor.visitEnd
+	 */
+	@Override
+	public void visitEnd() {
+		for (Site site : sites) {
+			lambdaClasses.put(site.lambdaName, generateClass(site, target(site)));
+		}
+		super.visitEnd();
+	}
+
+	/**
+	 * Test if a call site can be lowered
+	 * @param bootstrapMethodArguments the arguments of the metafactory
+	 * @return True if the arguments are the type of the method, its implementation and its instantiated type,
+	 * and the implementation can be called from a bridge of the class
+	 */
+	private boolean canLower(Object[] bootstrapMethodArguments) {
+		if (isInterface || bootstrapMethodArguments.length != 3 || !(bootstrapMethodArguments[0] instanceof Type)
+				|| !(bootstrapMethodArguments[1] instanceof Handle) || !(bootstrapMethodArguments[2] instanceof Type)) {
+			return false;
+		}
+		Handle implementation = (Handle) bootstrapMethodArguments[1];
+		return implementation.getTag() != Opcodes.H_INVOKESPECIAL || implementation.getOwner().equals(className);
+	}
+
+	/**
+	 * Method called by the generated class, the implementation of the lambda or a bridge to it
+	 */
+	private static class Target {
+		private final int opcode;
+		private final String owner;
+		private final String name;
+		private final String descriptor;
+		private final boolean ownerIsInterface;
+		private final Type[] parameters;
+		private final Type returnType;
+		private final boolean construct;
+
+		/**
+		 * Creates a new Target
+		 * @param opcode the opcode of the call
+		 * @param owner the internal name of the owner of the method
+		 * @param name the name of the method
+		 * @param descriptor the descriptor of the method
+		 * @param ownerIsInterface True if the owner is an interface, False either
+		 * @param parameters the values given to the call, the receiver first if there is one
+		 * @param returnType the type of the result of the call
+		 * @param construct True if the call is the constructor of a new object, False either
+		 */
+		Target(int opcode, String owner, String name, String descriptor, boolean ownerIsInterface, Type[] parameters, Type returnType, boolean construct) {
+			this.opcode = opcode;
+			this.owner = owner;
+			this.name = name;
+			this.descriptor = descriptor;
+			this.ownerIsInterface = ownerIsInterface;
+			this.parameters = parameters;
+			this.returnType = returnType;
+			this.construct = construct;
+		}
+	}
+
+	/**
+	 * Find the method called by the class of a lambda, a static bridge is added to the class when the
+	 * implementation is private or needs an invokespecial, since the generated class is not a nestmate
+	 * @param site the call site
+	 * @return the method to call
+	 */
+	private Target target(Site site) {
+		Handle implementation = site.implementation;
+		Type owner = Type.getObjectType(implementation.getOwner());
+		Type[] arguments = Type.getArgumentTypes(implementation.getDesc());
+		Type returnType = Type.getReturnType(implementation.getDesc());
+		Integer flags = access.get(implementation.getName() + implementation.getDesc());
+		boolean bridge = implementation.getTag() == Opcodes.H_INVOKESPECIAL || (implementation.getOwner().equals(className)
+				&& flags != null && (flags & Opcodes.ACC_PRIVATE) != 0);
+		switch (implementation.getTag()) {
+		case Opcodes.H_INVOKESTATIC:
+			if (bridge) {
+				return bridge(site, Opcodes.INVOKESTATIC, arguments, returnType);
+			}
+			return new Target(Opcodes.INVOKESTATIC, implementation.getOwner(), implementation.getName(), implementation.getDesc(),
+					implementation.isInterface(), arguments, returnType, false);
+		case Opcodes.H_NEWINVOKESPECIAL:
+			if (bridge) {
+				return bridge(site, Opcodes.INVOKESPECIAL, arguments, owner);
+			}
+			return new Target(Opcodes.INVOKESPECIAL, implementation.getOwner(), "<init>", implementation.getDesc(), false,
+					arguments, owner, true);
+		default:
+			Type[] parameters = prepend(owner, arguments);
+			if (bridge) {
+				return bridge(site, Opcodes.INVOKESPECIAL, parameters, returnType);
+			}
+			int opcode = implementation.getTag() == Opcodes.H_INVOKEINTERFACE ? Opcodes.INVOKEINTERFACE : Opcodes.INVOKEVIRTUAL;
+			return new Target(opcode, implementation.getOwner(), implementation.getName(), implementation.getDesc(),
+					implementation.isInterface(), parameters, returnType, false);
+		}
+	}
+
+	/**
+	 * Add to the class a static method which calls the implementation of a lambda
+	 * @param site the call site
+	 * @param opcode the opcode of the call of the implementation
+	 * @param parameters the parameters of the bridge, the receiver first if there is one
+	 * @param returnType the type returned by the bridge
+	 * @return the bridge to call
+	 */
+	private Target bridge(Site site, int opcode, Type[] parameters, Type returnType) {
+		Handle implementation = site.implementation;
+		String name = "access$lambda$" + site.lambdaName.substring(site.lambdaName.lastIndexOf('$') + 1);
+		String descriptor = Type.getMethodDescriptor(returnType, parameters);
+		MethodVisitor mv = super.visitMethod(Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, name, descriptor, null, null);
+		mv.visitCode();
+		boolean construct = implementation.getTag() == Opcodes.H_NEWINVOKESPECIAL;
+		if (construct) {
+			mv.visitTypeInsn(Opcodes.NEW, implementation.getOwner());
+			mv.visitInsn(Opcodes.DUP);
+		}
+		int slot = 0;
+		for (Type parameter : parameters) {
+			mv.visitVarInsn(parameter.getOpcode(Opcodes.ILOAD), slot);
+			slot += parameter.getSize();
+		}
+		mv.visitMethodInsn(opcode, implementation.getOwner(), construct ? "<init>" : implementation.getName(), implementation.getDesc(), false);
+		mv.visitInsn(returnType.getOpcode(Opcodes.IRETURN));
+		mv.visitMaxs(Math.max(slot + (construct ? 2 : 0), returnType.getSize()), slot);
+		mv.visitEnd();
+		return new Target(Opcodes.INVOKESTATIC, className, name, descriptor, false, parameters, returnType, false);
+	}
+
+	/**
+	 * Add a type before an array of types
+	 * @param first the first type
+	 * @param others the other types
+	 * @return the new array of types
+	 */
+	private static Type[] prepend(Type first, Type[] others) {
+		Type[] types = new Type[others.length + 1];
+		types[0] = first;
+		System.arraycopy(others, 0, types, 1, others.length);
+		return types;
+	}
+
+	/**
+	 * Generate the class of a lambda: a final field by captured value, a private constructor, the method of
+	 * the functional interface and either the static final instance or the static factory
+	 * @param site the call site
+	 * @param target the method called by the lambda
+	 * @return the content of the generated class
+	 */
+	private byte[] generateClass(Site site, Target target) {
+		Type[] captured = Type.getArgumentTypes(site.descriptor);
+		Type functional = Type.getReturnType(site.descriptor);
+		String constructor = Type.getMethodDescriptor(Type.VOID_TYPE, captured);
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(44 + targetVersion, Opcodes.ACC_FINAL | Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC, site.lambdaName, null,
+				"java/lang/Object", new String[] { functional.getInternalName() });
+		for (int i = 0; i < captured.length; i++) {
+			writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "arg$" + i, captured[i].getDescriptor(), null, null).visitEnd();
+		}
+
+		MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PRIVATE, "<init>", constructor, null, null);
+		mv.visitCode();
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+		int slot = 1;
+		for (int i = 0; i < captured.length; i++) {
+			mv.visitVarInsn(Opcodes.ALOAD, 0);
+			mv.visitVarInsn(captured[i].getOpcode(Opcodes.ILOAD), slot);
+			mv.visitFieldInsn(Opcodes.PUTFIELD, site.lambdaName, "arg$" + i, captured[i].getDescriptor());
+			slot += captured[i].getSize();
+		}
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		if (captured.length == 0) {
+			writer.visitField(Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, INSTANCE, functional.getDescriptor(), null, null).visitEnd();
+			mv = writer.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+			mv.visitCode();
+			mv.visitTypeInsn(Opcodes.NEW, site.lambdaName);
+			mv.visitInsn(Opcodes.DUP);
+			mv.visitMethodInsn(Opcodes.INVOKESPECIAL, site.lambdaName, "<init>", constructor, false);
+			mv.visitFieldInsn(Opcodes.PUTSTATIC, site.lambdaName, INSTANCE, functional.getDescriptor());
+			mv.visitInsn(Opcodes.RETURN);
+		} else {
+			mv = writer.visitMethod(Opcodes.ACC_STATIC, FACTORY, site.descriptor, null, null);
+			mv.visitCode();
+			mv.visitTypeInsn(Opcodes.NEW, site.lambdaName);
+			mv.visitInsn(Opcodes.DUP);
+			slot = 0;
+			for (Type type : captured) {
+				mv.visitVarInsn(type.getOpcode(Opcodes.ILOAD), slot);
+				slot += type.getSize();
+			}
+			mv.visitMethodInsn(Opcodes.INVOKESPECIAL, site.lambdaName, "<init>", constructor, false);
+			mv.visitInsn(Opcodes.ARETURN);
+		}
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		mv = writer.visitMethod(Opcodes.ACC_PUBLIC, site.samName, site.sam.getDescriptor(), null, null);
+		mv.visitCode();
+		if (target.construct) {
+			mv.visitTypeInsn(Opcodes.NEW, target.owner);
+			mv.visitInsn(Opcodes.DUP);
+		}
+		int parameter = 0;
+		for (int i = 0; i < captured.length; i++) {
+			mv.visitVarInsn(Opcodes.ALOAD, 0);
+			mv.visitFieldInsn(Opcodes.GETFIELD, site.lambdaName, "arg$" + i, captured[i].getDescriptor());
+			convert(mv, captured[i], target.parameters[parameter++]);
+		}
+		Type[] erased = site.sam.getArgumentTypes();
+		Type[] instantiated = site.instantiated.getArgumentTypes();
+		slot = 1;
+		for (int i = 0; i < erased.length; i++) {
+			mv.visitVarInsn(erased[i].getOpcode(Opcodes.ILOAD), slot);
+			slot += erased[i].getSize();
+			convert(mv, erased[i], instantiated[i]);
+			convert(mv, instantiated[i], target.parameters[parameter++]);
+		}
+		mv.visitMethodInsn(target.opcode, target.owner, target.name, target.descriptor, target.ownerIsInterface);
+		Type returnType = site.sam.getReturnType();
+		if (returnType.getSort() == Type.VOID) {
+			if (target.returnType.getSort() != Type.VOID) {
+				mv.visitInsn(target.returnType.getSize() == 2 ? Opcodes.POP2 : Opcodes.POP);
+			}
+		} else {
+			convert(mv, target.returnType, site.instantiated.getReturnType());
+			convert(mv, site.instantiated.getReturnType(), returnType);
+		}
+		mv.visitInsn(returnType.getOpcode(Opcodes.IRETURN));
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Convert the value on the top of the stack as the metafactory does: widening of the primitives,
+	 * boxing, unboxing and cast of the references
+	 * @param mv the method which converts the value
+	 * @param from the type of the value
+	 * @param to the expected type
+	 */
+	private static void convert(MethodVisitor mv, Type from, Type to) {
+		if (from.equals(to)) {
+			return;
+		}
+		boolean fromPrimitive = from.getSort() < Type.ARRAY;
+		boolean toPrimitive = to.getSort() < Type.ARRAY;
+		if (fromPrimitive && toPrimitive) {
+			widen(mv, from, to);
+		} else if (fromPrimitive) {
+			Type wrapper = wrapper(from);
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, wrapper.getInternalName(), "valueOf",
+					Type.getMethodDescriptor(wrapper, from), false);
+		} else if (toPrimitive) {
+			Type primitive = primitive(from);
+			if (primitive == null) {
+				primitive = to;
+				mv.visitTypeInsn(Opcodes.CHECKCAST, wrapper(to).getInternalName());
+			}
+			mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, wrapper(primitive).getInternalName(), primitive.getClassName() + "Value",
+					Type.getMethodDescriptor(primitive), false);
+			widen(mv, primitive, to);
+		} else if (!to.getInternalName().equals("java/lang/Object")) {
+			mv.visitTypeInsn(Opcodes.CHECKCAST, to.getInternalName());
+		}
+	}
+
+	/**
+	 * Widen a primitive value on the top of the stack
+	 * @param mv the method which converts the value
+	 * @param from the primitive type of the value
+	 * @param to the wider primitive type
+	 */
+	private static void widen(MethodVisitor mv, Type from, Type to) {
+		int fromSort = from.getSort() <= Type.INT ? Type.INT : from.getSort();
+		int toSort = to.getSort() <= Type.INT ? Type.INT : to.getSort();
+		if (fromSort == toSort) {
+			return;
+		}
+		switch (fromSort) {
+		case Type.INT: mv.visitInsn(toSort == Type.LONG ? Opcodes.I2L : toSort == Type.FLOAT ? Opcodes.I2F : Opcodes.I2D); break;
+		case Type.LONG: mv.visitInsn(toSort == Type.FLOAT ? Opcodes.L2F : Opcodes.L2D); break;
+		case Type.FLOAT: mv.visitInsn(Opcodes.F2D); break;
+		default: throw new IllegalArgumentException("Can't convert " + from + " to " + to);
+		}
+	}
+
+	/**
+	 * Gets the wrapper class of a primitive type
+	 * @param primitive the primitive type
+	 * @return the type of the wrapper class
+	 */
+	private static Type wrapper(Type primitive) {
+		switch (primitive.getSort()) {
+		case Type.BOOLEAN: return Type.getObjectType("java/lang/Boolean");
+		case Type.CHAR: return Type.getObjectType("java/lang/Character");
+		case Type.BYTE: return Type.getObjectType("java/lang/Byte");
+		case Type.SHORT: return Type.getObjectType("java/lang/Short");
+		case Type.INT: return Type.getObjectType("java/lang/Integer");
+		case Type.FLOAT: return Type.getObjectType("java/lang/Float");
+		case Type.LONG: return Type.getObjectType("java/lang/Long");
+		case Type.DOUBLE: return Type.getObjectType("java/lang/Double");
+		default: throw new IllegalArgumentException(primitive + " is not a primitive type");
+		}
+	}
+
+	/**
+	 * Gets the primitive type of a wrapper class
+	 * @param type the type of a reference
+	 * @return the primitive type if the reference is a wrapper class, null either
+	 */
+	private static Type primitive(Type type) {
+		for (Type primitive : new Type[] { Type.BOOLEAN_TYPE, Type.CHAR_TYPE, Type.BYTE_TYPE, Type.SHORT_TYPE, Type.INT_TYPE,
+				Type.FLOAT_TYPE, Type.LONG_TYPE, Type.DOUBLE_TYPE }) {
+			if (wrapper(primitive).equals(type)) {
+				return primitive;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * LowererMethodVisitor updater, based on MethodVisitor
+	 * @author LBillaut
+	 *
+	 */
+	class LowererMethodVisitor extends MethodVisitor {
+
+		/**
+		 * Creates a new LowererMethodVisitor
+		 * @param methodVisitor the MethodVisitor to which delegate the visit of the method
+		 */
+		public LowererMethodVisitor(MethodVisitor methodVisitor) {
+			super(Opcodes.ASM7, methodVisitor);
+		}
+
+		/**
+		 * Replace a call site of the metafactory by the read of the instance of a generated class if the
+		 * lambda captures nothing, by the call of its factory either, based on MethodVisitor.visitInvokeDynamicInsn
+		 */
+		@Override
+		public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+			String bootstrap = bootstrapMethodHandle.getName();
+			if (!bootstrap.equals("metafactory") && !bootstrap.equals("altMetafactory")) {
+				super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+				return;
+			}
+			if (!canLower(bootstrapMethodArguments)) {
+				lowered = false;
+				super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+				return;
+			}
+			var site = new Site(className + "$$Lambda$" + sites.size(), name, descriptor, (Type) bootstrapMethodArguments[0],
+					(Handle) bootstrapMethodArguments[1], (Type) bootstrapMethodArguments[2]);
+			sites.add(site);
+			if (Type.getArgumentTypes(descriptor).length == 0) {
+				super.visitFieldInsn(Opcodes.GETSTATIC, site.lambdaName, INSTANCE, Type.getReturnType(descriptor).getDescriptor());
+			} else {
+				super.visitMethodInsn(Opcodes.INVOKESTATIC, site.lambdaName, FACTORY, descriptor, false);
+			}
+		}
+	}
+}
@@ -26,4 +26,23 @@ public class VersionUpdater extends Detector {
 	public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
 		super.visit(44 + targetVersion, access, name, signature, superName, interfaces);
 	}
+
+	/**
+	 * Change the version of a class file without visiting it, for the classes which have nothing else to update
+	 * @param bytes the content of the class file
+	 * @param targetVersion the target version
+	 * @return a copy of the class file with the version of the target
+	 */
+	public static byte[] patchVersion(byte[] bytes, int targetVersion) {
+		if (bytes.length < 8) {
+			throw new IllegalArgumentException("Invalid class file");
+		}
+		byte[] patched = bytes.clone();
+		int major = 44 + targetVersion;
+		patched[4] = 0;
+		patched[5] = 0;
+		patched[6] = (byte) (major >> 8);
+		patched[7] = (byte) major;
+		return patched;
+	}
 }
@@ -1,11 +1,17 @@
 package fr.umlv.retro.classvisitors.visitors;
 
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
+import fr.umlv.retro.features.CodeFeature;
+import fr.umlv.retro.features.Feature;
+
 /**
  * Concatenation detector, based on Detector which inherits ClassVisitor
  * @author PJBesnard
@@ -20,6 +26,22 @@ public class ConcatDetector extends Detector {
 	private String actualType;
 	private int version;
 
+	/**
+	 * Gets the events needed by the detector, based on Detector.getEvents
+	 */
+	@Override
+	public Set<Event> getEvents() {
+		return EnumSet.of(Event.VISIT, Event.METHOD, Event.LINE_NUMBER, Event.INVOKE_DYNAMIC);
+	}
+
+	/**
+	 * Accepts only the makeConcatWithConstants bootstrap method, based on Detector.acceptBootstrap
+	 */
+	@Override
+	public boolean acceptBootstrap(Handle bootstrapMethodHandle) {
+		return bootstrapMethodHandle.getName().equals("makeConcatWithConstants");
+	}
+
 	/**
 	 * Stocks the name and the Java version of the class visited, based on ClassVisitor.visit
 	 */
@@ -48,7 +70,7 @@ public class ConcatDetector extends Detector {
 	 */
 	class ConcatMethodVisitor extends MethodVisitor {
 
-		private int line;
+		private int line = -1;
 
 		/**
 		 * Creates a new ConcatMethodVisitor
@@ -59,18 +81,14 @@ public class ConcatDetector extends Detector {
 		}
 
 		/**
-		 * Notifies ConcatDetector observers when visits a concatenation instruction, based on MethodVisitor.visitInvokeDynamicInsn
+		 * Notifies ConcatDetector observers when visits a concatenation instruction, based on MethodVisitor.visitInvokeDynamicInsn.
+		 * Only the instructions accepted by acceptBootstrap are given by the DetectorMultiplexer.
 		 */
 		@Override
 		public void visitInvokeDynamicInsn(java.lang.String name, java.lang.String descriptor,
 				Handle bootstrapMethodHandle, java.lang.Object... bootstrapMethodArguments) {
-
-			if (bootstrapMethodHandle.getName().equals("makeConcatWithConstants")) {
-				notifyObservers(version, "CONCATENATION",
-						"CONCATENATION at " + className + "." + actualMethod + actualType + " (" + className + ".java"
-								+ ":" + line + "):" + " pattern "
-								+ bootstrapMethodArguments[0].toString().replaceAll("\u0001", "%1"));
-			}
+			notifyObservers(new CodeFeature(version, Feature.CONCATENATION, className, actualMethod, actualType, line,
+					List.of(String.valueOf(bootstrapMethodArguments[0]))));
 			super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
 
 		}
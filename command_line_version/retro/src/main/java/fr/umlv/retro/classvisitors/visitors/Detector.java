@@ -1,12 +1,16 @@
 package fr.umlv.retro.classvisitors.visitors;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Opcodes;
 
+import fr.umlv.retro.features.CodeFeature;
 import fr.umlv.retro.features.FeaturesObserver;
 
 
@@ -17,6 +21,34 @@ import fr.umlv.retro.features.FeaturesObserver;
  */
 public class Detector extends ClassVisitor {
 	private final List<FeaturesObserver> observers = new ArrayList<>();	
+
+	/**
+	 * The kinds of events a Detector can receive from a DetectorMultiplexer
+	 * @author PJBesnard
+	 *
+	 */
+	public enum Event {
+		/** ClassVisitor.visit */
+		VISIT,
+		/** ClassVisitor.visitNestHost and ClassVisitor.visitNestMember */
+		NEST,
+		/** ClassVisitor.visitMethod */
+		METHOD,
+		/** MethodVisitor.visitLineNumber */
+		LINE_NUMBER,
+		/** MethodVisitor.visitLabel */
+		LABEL,
+		/** MethodVisitor.visitJumpInsn */
+		JUMP,
+		/** MethodVisitor.visitTryCatchBlock */
+		TRY_CATCH,
+		/** MethodVisitor.visitMethodInsn */
+		METHOD_INSN,
+		/** MethodVisitor.visitInvokeDynamicInsn, only for the accepted bootstrap methods */
+		INVOKE_DYNAMIC,
+		/** ClassVisitor.visitEnd */
+		END
+	}
 	
 	
 	/**
@@ -44,13 +76,28 @@ public class Detector extends ClassVisitor {
 	}
 	
 	/**
-	 * Add (ClassFile version, FeatureName, FeatureLog) to all Detector observer 
-	 * @param version of the Class file which contains feature
-	 * @param feature name of the feature
-	 * @param log log of the feature
+	 * Gets the events the Detector needs, the other events are not given to it
+	 * @return the kinds of the events needed by the Detector
+	 */
+	public Set<Event> getEvents() {
+		return EnumSet.allOf(Event.class);
+	}
+
+	/**
+	 * Test if the Detector needs the invokedynamic instructions which use a bootstrap method
+	 * @param bootstrapMethodHandle the bootstrap method
+	 * @return True if the instructions must be given to the Detector, False either
+	 */
+	public boolean acceptBootstrap(Handle bootstrapMethodHandle) {
+		return true;
+	}
+
+	/**
+	 * Add a detected feature to all Detector observer 
+	 * @param feature the feature detected
 	 */
-	public void notifyObservers(int version, String feature, String log) {
-		observers.forEach(observer -> observer.onFeatureDetected(version, feature, log));
+	public void notifyObservers(CodeFeature feature) {
+		observers.forEach(observer -> observer.onFeatureDetected(feature));
 	}
 	
 
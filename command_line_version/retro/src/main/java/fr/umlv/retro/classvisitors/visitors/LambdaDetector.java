@@ -1,10 +1,17 @@
 package fr.umlv.retro.classvisitors.visitors;
 
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.Label;
 
+import fr.umlv.retro.features.CodeFeature;
+import fr.umlv.retro.features.Feature;
+
 
 /**
  * LambdaDetector detector, based on Detector which inherits ClassVisitor
@@ -22,6 +29,23 @@ public class LambdaDetector extends Detector {
 
 
 
+	/**
+	 * Gets the events needed by the detector, based on Detector.getEvents
+	 */
+	@Override
+	public Set<Event> getEvents() {
+		return EnumSet.of(Event.VISIT, Event.METHOD, Event.LINE_NUMBER, Event.INVOKE_DYNAMIC);
+	}
+
+	/**
+	 * Accepts only the metafactory and altMetafactory bootstrap methods, based on Detector.acceptBootstrap
+	 */
+	@Override
+	public boolean acceptBootstrap(Handle bootstrapMethodHandle) {
+		String name = bootstrapMethodHandle.getName();
+		return name.equals("metafactory") || name.equals("altMetafactory");
+	}
+
 	/**
 	 * Stocks the name and the Java version of the class visited, based on ClassVisitor.visit
 	 */
@@ -51,7 +75,7 @@ public class LambdaDetector extends Detector {
 	 */
 	class LambdaMethodVisitor extends MethodVisitor {
 
-		private int line;
+		private int line = -1;
 
 		/**
 		 * Creates a new LambdaMethodVisitor
@@ -62,20 +86,20 @@ public class LambdaDetector extends Detector {
 		}
 
 		/**
-		 * Notifies LambdaDetector observers when visits a lambda instruction, based on MethodVisitor.visitInvokeDynamicInsn
+		 * Notifies LambdaDetector observers when visits a lambda instruction, based on MethodVisitor.visitInvokeDynamicInsn.
+		 * Only the instructions accepted by acceptBootstrap are given by the DetectorMultiplexer.
 		 */
 		@Override
 		public void visitInvokeDynamicInsn(java.lang.String name, java.lang.String descriptor,
 				Handle bootstrapMethodHandle, java.lang.Object... bootstrapMethodArguments) {
-
-			if (bootstrapMethodHandle.getName().equals("metafactory")) {
-				notifyObservers(version, "LAMBDA", "LAMBDA at " + className
-						+ "." + actualMethod + actualType + " (" + className + ".java" + ":" + line + "):" + " lambda "
-						+ descriptor.substring(descriptor.indexOf('L') + 1, descriptor.length() - 1) + " capture ["
-						+ descriptor.substring(descriptor.indexOf('(') + 1, descriptor.indexOf(')')) + "] calling "
-						+ bootstrapMethodArguments[1].toString().split(" ")[0]);
-
+			List<String> payload;
+			if (bootstrapMethodArguments[1] instanceof Handle) {
+				Handle implementation = (Handle) bootstrapMethodArguments[1];
+				payload = List.of(descriptor, implementation.getOwner(), implementation.getName(), implementation.getDesc());
+			} else {
+				payload = List.of(descriptor, String.valueOf(bootstrapMethodArguments[1]), "", "");
 			}
+			notifyObservers(new CodeFeature(version, Feature.LAMBDA, className, actualMethod, actualType, line, payload));
 			super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
 		}
 
@@ -1,7 +1,13 @@
 package fr.umlv.retro.classvisitors.visitors;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.LinkedList;
-import java.util.StringJoiner;
+import java.util.List;
+import java.util.Set;
+
+import fr.umlv.retro.features.CodeFeature;
+import fr.umlv.retro.features.Feature;
 
 /**
  * NestmateDetector detector, based on Detector which inherits ClassVisitor
@@ -17,12 +23,22 @@ public class NestmateDetector extends Detector {
 	private String nestHost;
 
 	/**
-	 * Stocks the name and the Java version of the class visited, based on ClassVisitor.visit
+	 * Gets the events needed by the detector, based on Detector.getEvents
+	 */
+	@Override
+	public Set<Event> getEvents() {
+		return EnumSet.of(Event.VISIT, Event.NEST, Event.END);
+	}
+
+	/**
+	 * Stocks the name and the Java version of the class visited and forgets the nestmates of the previous class, based on ClassVisitor.visit
 	 */
 	@Override
 	public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
 		this.name = name;
 		this.version = version;
+		nestMemberList.clear();
+		nestHost = null;
 		super.visit(version, access, name, signature, superName, interfaces);
 	}
 
@@ -36,30 +52,31 @@ public class NestmateDetector extends Detector {
 	}
 
 	/**
-	 * Stocks the nestHost visited, based on ClassVisitor.visitNestMember
+	 * Stocks the nestHost visited, based on ClassVisitor.visitNestHost
 	 */
 	@Override
 	public void visitNestHost(final String nestHost) {
 		this.nestHost = nestHost;
-		super.visitNestMember(nestHost);
+		super.visitNestHost(nestHost);
 	}
 
 	/**
-	 * Creates message for observers when a nesthost is detected in class
-	 * @return a String which represents the log of the feature detected
+	 * Creates the feature for observers when a nesthost is detected in class
+	 * @return the feature detected
 	 */
-	private String messageForEmptyList() {
-		return "NESTMATES at " + name + " (" + nestHost + ".java): nestmate of " + nestHost;
+	private CodeFeature featureForEmptyList() {
+		return new CodeFeature(version, Feature.NESTMATES, name, null, null, -1, List.of("nestmate of", nestHost));
 	}
 
 	/**
-	 * Creates message for observers when a nestmember is detected in class
-	 * @return a String which represents the log of the feature detected
+	 * Creates the feature for observers when a nestmember is detected in class
+	 * @return the feature detected
 	 */
-	private String messageForNotEmptyList() {
-		StringJoiner sb = new StringJoiner(", ", "[", "]");
-		nestMemberList.forEach(nm -> sb.add(nm));
-		return "NESTMATES at " + name + " (" + name + ".java): new host " + name + " members " + sb.toString();
+	private CodeFeature featureForNotEmptyList() {
+		List<String> payload = new ArrayList<>(nestMemberList.size() + 1);
+		payload.add("new host");
+		payload.addAll(nestMemberList);
+		return new CodeFeature(version, Feature.NESTMATES, name, null, null, -1, payload);
 	}
 
 	/**
@@ -68,9 +85,9 @@ public class NestmateDetector extends Detector {
 	@Override
 	public void visitEnd() {
 		if (nestMemberList.size() == 0 && nestHost != null) {
-			notifyObservers(version, "NESTMATES", messageForEmptyList());
+			notifyObservers(featureForEmptyList());
 		} else if (nestMemberList.size() > 0) {
-			notifyObservers(version, "NESTMATES", messageForNotEmptyList());
+			notifyObservers(featureForNotEmptyList());
 		}
 		super.visitEnd();
 	}
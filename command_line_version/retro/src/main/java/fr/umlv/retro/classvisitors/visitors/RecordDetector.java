@@ -1,7 +1,11 @@
 package fr.umlv.retro.classvisitors.visitors;
 
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
-
+import fr.umlv.retro.features.CodeFeature;
+import fr.umlv.retro.features.Feature;
 
 /**
  * RecordDetector detector, based on Detector which inherits ClassVisitor
@@ -10,13 +14,21 @@ package fr.umlv.retro.classvisitors.visitors;
  */
 public class RecordDetector extends Detector {
 
+	/**
+	 * Gets the events needed by the detector, based on Detector.getEvents
+	 */
+	@Override
+	public Set<Event> getEvents() {
+		return EnumSet.of(Event.VISIT);
+	}
+
 	/**
 	 * Stocks the name and the Java version of the class visited, based on ClassVisitor.visit
 	 */
 	@Override
 	public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
-		if (superName.equals("java/lang/Record")) {
-			super.notifyObservers(version, "RECORD", "RECORD at " + name + " " + name + ".java" + " is a Record Class");
+		if ("java/lang/Record".equals(superName)) {
+			super.notifyObservers(new CodeFeature(version, Feature.RECORD, name, null, null, -1, List.of()));
 		}
 		super.visit(version, access, name, signature, superName, interfaces);
 	}
@@ -1,14 +1,20 @@
 package fr.umlv.retro.classvisitors.visitors;
 
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
+import fr.umlv.retro.features.CodeFeature;
+import fr.umlv.retro.features.Feature;
+
 
 /**
  * TryWithRessourcesDetector detector, based on Detector which inherits ClassVisitor
@@ -21,6 +27,14 @@ public class TryWithRessourcesDetector extends Detector {
 	private String className;
 	private int version;
 	
+	/**
+	 * Gets the events needed by the detector, based on Detector.getEvents
+	 */
+	@Override
+	public Set<Event> getEvents() {
+		return EnumSet.of(Event.VISIT, Event.METHOD, Event.LABEL, Event.JUMP, Event.TRY_CATCH, Event.METHOD_INSN, Event.LINE_NUMBER);
+	}
+
 	/**
 	 * Stocks the name and the Java version of the class visited, based on ClassVisitor.visit
 	 */
@@ -98,7 +112,7 @@ public class TryWithRessourcesDetector extends Detector {
 		@Override
 		public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
 			if(finder.testIfTwr(opcode, name, owner)) {
-				notifyObservers(version, "TRY_WITH_RESOURCES", "TRY_WITH_RESOURCES at " + className + "." + methodName + methodDescriptor + " (" + className + ".java:" + finder.getBeginningLine() + ") " + "try-with-resources on " + finder.getOwner());
+				notifyObservers(new CodeFeature(version, Feature.TRY_WITH_RESOURCES, className, methodName, methodDescriptor, finder.getBeginningLine(), List.of(String.valueOf(finder.getOwner()))));
 			}
 			super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
 		}
@@ -139,7 +153,7 @@ public class TryWithRessourcesDetector extends Detector {
 		private boolean addSuppressedDetected = false;
 		
 		private String owner;
-		private int line = 0;
+		private int line = -1;
 		
 		/**
 		 * Test if the label is a start of a catch or an end of a catch
@@ -280,10 +294,10 @@ public class TryWithRessourcesDetector extends Detector {
 		
 		/**
 		 * Return the line of beginning of the Try-With-Resources
-		 * @return the line of beginning of the Try-With-Resources
+		 * @return the line of beginning of the Try-With-Resources, or -1 if the class has no line numbers
 		 */
 		public int getBeginningLine() {
-			return line - 1;
+			return line < 0 ? -1 : line - 1;
 		}
 		
 	}
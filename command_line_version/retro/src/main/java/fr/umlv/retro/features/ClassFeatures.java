@@ -0,0 +1,86 @@
+package fr.umlv.retro.features;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Features detected in one class, view of a range of a FeaturesStocker with a mask of the kinds of
+ * features of the class, so the kinds can be tested without reading the features.
+ * @author PJBesnard
+ *
+ */
+public class ClassFeatures {
+	private final FeaturesStocker stocker;
+	private final int from;
+	private final int to;
+	private final long mask;
+
+	/**
+	 * Creates a new ClassFeatures
+	 * @param stocker the FeaturesStocker which stocks the features
+	 * @param from the index of the first feature of the class
+	 * @param to the index after the last feature of the class
+	 * @param mask the mask of the kinds of features of the class
+	 */
+	ClassFeatures(FeaturesStocker stocker, int from, int to, long mask) {
+		this.stocker = stocker;
+		this.from = from;
+		this.to = to;
+		this.mask = mask;
+	}
+
+	/**
+	 * Get the number of features detected in the class
+	 * @return the number of features detected in the class
+	 */
+	public int size() {
+		return to - from;
+	}
+
+	/**
+	 * Test if no feature was detected in the class
+	 * @return True if no feature was detected, False either
+	 */
+	public boolean isEmpty() {
+		return mask == 0;
+	}
+
+	/**
+	 * Get the kinds of features detected in the class, without reading the features
+	 * @return the kinds of features
+	 */
+	public Set<Feature> getKinds() {
+		var kinds = EnumSet.noneOf(Feature.class);
+		for (long bits = mask; bits != 0; bits &= bits - 1) {
+			kinds.add(Feature.all().get(Long.numberOfTrailingZeros(bits)));
+		}
+		return kinds;
+	}
+
+	/**
+	 * Test if a kind of feature was detected in the class
+	 * @param kind the kind of feature
+	 * @return True if the kind was detected, False either
+	 */
+	public boolean contains(Feature kind) {
+		return (mask & kind.bit()) != 0;
+	}
+
+	/**
+	 * Get the logs of the asked features of the class
+	 * @param features the kinds of the asked features
+	 * @return the logs of the asked features, in the order of the asked kinds
+	 */
+	public String getFeaturesLog(List<Feature> features) {
+		return stocker.getFeaturesLog(features, from, to);
+	}
+
+	/**
+	 * Get the features detected in the class
+	 * @return a List version of the features of the class
+	 */
+	public List<CodeFeature> getFeatures() {
+		return stocker.getFeatures().subList(from, to);
+	}
+}
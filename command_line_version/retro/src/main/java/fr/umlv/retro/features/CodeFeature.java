@@ -1,55 +1,166 @@
 package fr.umlv.retro.features;
 
+import java.util.List;
 import java.util.Objects;
+import java.util.StringJoiner;
 
 
 /**
- * Stocks a feature contained in a class file
+ * Stocks a feature contained in a class file. The feature is stocked as its fields, its log is only
+ * created when it is asked
  * @author PJBesnard
  *
  */
 public class CodeFeature {
-	private final String name;
-	private final String log;
+	private final Feature feature;
 	private final int classVersion;
-	
+	private final String owner;
+	private final String method;
+	private final String descriptor;
+	private final int line;
+	private final List<String> payload;
+
 	/**
 	 * creates a new CodeFeature
 	 * @param classVersion Java version of the class file which contains the feature
-	 * @param name Name of the feature
-	 * @param log Log of the feature
+	 * @param feature Kind of the feature
+	 * @param owner Name of the class which contains the feature
+	 * @param method Name of the method which contains the feature, or null if the feature is on the class
+	 * @param descriptor Descriptor of the method which contains the feature, or null if the feature is on the class
+	 * @param line Line of the feature, or -1 if it is unknown
+	 * @param payload Informations specific to the feature
 	 */
-	public CodeFeature(int classVersion, String name, String log) {
+	public CodeFeature(int classVersion, Feature feature, String owner, String method, String descriptor, int line, List<String> payload) {
 		this.classVersion = classVersion;
-		this.name = Objects.requireNonNull(name);
-		this.log = Objects.requireNonNull(log);
+		this.feature = Objects.requireNonNull(feature);
+		this.owner = Objects.requireNonNull(owner);
+		this.method = method;
+		this.descriptor = descriptor;
+		this.line = line;
+		this.payload = List.copyOf(payload);
 	}
 
 	/**
 	 * gets the name of the feature
-	 * @return
+	 * @return the name of the feature
 	 */
 	public String getName() {
-		return name;
+		return feature.name();
 	}
 
 	/**
-	 * gets the log of the feature
-	 * @return
+	 * gets the kind of the feature
+	 * @return the kind of the feature
 	 */
-	public String getLog() {
-		return log;
+	public Feature getFeature() {
+		return feature;
+	}
+
+	/**
+	 * gets the name of the class which contains the feature
+	 * @return the name of the class
+	 */
+	public String getOwner() {
+		return owner;
+	}
+
+	/**
+	 * gets the name of the method which contains the feature
+	 * @return the name of the method, or null if the feature is on the class
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * gets the descriptor of the method which contains the feature
+	 * @return the descriptor of the method, or null if the feature is on the class
+	 */
+	public String getDescriptor() {
+		return descriptor;
+	}
+
+	/**
+	 * gets the line of the feature
+	 * @return the line of the feature, or -1 if it is unknown
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	/**
+	 * gets the informations specific to the feature
+	 * @return the informations specific to the feature
+	 */
+	public List<String> getPayload() {
+		return payload;
 	}
-	
+
 	/**
 	 * gets the Java version of the Class which contains the feature
-	 * @return
+	 * @return the Java version of the Class
 	 */
 	public int getClassVersion() {
 		return classVersion;
 	}
-	
 
+	/**
+	 * Creates the location of the feature in the source file, the line is omitted when it is unknown
+	 * @param className the name of the class of the source file
+	 * @return the name of the source file followed by the line if it is known
+	 */
+	private String location(String className) {
+		return line < 0 ? className + ".java" : className + ".java:" + line;
+	}
 
-	
-}
\ No newline at end of file
+	/**
+	 * Creates the log of a lambda, the payload is the descriptor of the invokedynamic then the owner,
+	 * the name and the descriptor of the implementation method
+	 * @return the log of the lambda
+	 */
+	private String lambdaLog() {
+		String indy = payload.get(0);
+		return "LAMBDA at " + owner + "." + method + descriptor + " (" + location(owner) + "):" + " lambda "
+				+ indy.substring(indy.indexOf('L') + 1, indy.length() - 1) + " capture ["
+				+ indy.substring(indy.indexOf('(') + 1, indy.indexOf(')')) + "] calling "
+				+ payload.get(1) + "." + payload.get(2) + payload.get(3);
+	}
+
+	/**
+	 * Creates the log of a concatenation, the payload is the recipe of the concatenation
+	 * @return the log of the concatenation
+	 */
+	private String concatenationLog() {
+		return "CONCATENATION at " + owner + "." + method + descriptor + " (" + location(owner) + "):" + " pattern "
+				+ payload.get(0).replace("\u0001", "%1");
+	}
+
+	/**
+	 * Creates the log of a nestmate, the payload is "nestmate of" followed by the host,
+	 * or "new host" followed by the members
+	 * @return the log of the nestmate
+	 */
+	private String nestmatesLog() {
+		if (payload.get(0).equals("nestmate of")) {
+			return "NESTMATES at " + owner + " (" + payload.get(1) + ".java): nestmate of " + payload.get(1);
+		}
+		StringJoiner sj = new StringJoiner(", ", "[", "]");
+		payload.subList(1, payload.size()).forEach(sj::add);
+		return "NESTMATES at " + owner + " (" + owner + ".java): new host " + owner + " members " + sj.toString();
+	}
+
+	/**
+	 * gets the log of the feature, created each time it is asked
+	 * @return the log of the feature
+	 */
+	public String getLog() {
+		switch (feature) {
+		case LAMBDA: return lambdaLog();
+		case CONCATENATION: return concatenationLog();
+		case NESTMATES: return nestmatesLog();
+		case RECORD: return "RECORD at " + owner + " " + owner + ".java" + " is a Record Class";
+		case TRY_WITH_RESOURCES: return "TRY_WITH_RESOURCES at " + owner + "." + method + descriptor + " (" + location(owner) + ") " + "try-with-resources on " + payload.get(0);
+		default: throw new AssertionError(feature);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package fr.umlv.retro.features;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Observer which can be notified by several threads at the same time. Each thread stocks its features
+ * in its own FeaturesStocker, so the threads never wait for each other, and the stockers are merged
+ * once, when all the features are known.
+ * @author PJBesnard
+ *
+ */
+public class ConcurrentFeaturesObserver implements FeaturesObserver {
+	private final ConcurrentLinkedQueue<FeaturesStocker> stripes = new ConcurrentLinkedQueue<>();
+	private final ThreadLocal<FeaturesStocker> stripe = ThreadLocal.withInitial(this::newStripe);
+
+	/**
+	 * Creates the stocker of a thread
+	 * @return the new stocker
+	 */
+	private FeaturesStocker newStripe() {
+		var stocker = new FeaturesStocker();
+		stripes.add(stocker);
+		return stocker;
+	}
+
+	/**
+	 * Stocks a feature in the stocker of the current thread
+	 */
+	@Override
+	public void onFeatureDetected(CodeFeature feature) {
+		stripe.get().onFeatureDetected(Objects.requireNonNull(feature));
+	}
+
+	/**
+	 * Stocks all the features of a stocker in the stocker of the current thread
+	 * @param stocker the features to add
+	 */
+	public void addAll(FeaturesStocker stocker) {
+		stripe.get().addAll(Objects.requireNonNull(stocker));
+	}
+
+	/**
+	 * Merge the features of all the threads, it must be called once the threads which notify the observer
+	 * are done, the features of a thread stay together in the order they were detected
+	 * @return the features of all the threads
+	 */
+	public FeaturesStocker merge() {
+		var merged = new FeaturesStocker();
+		stripes.forEach(merged::addAll);
+		return merged;
+	}
+}
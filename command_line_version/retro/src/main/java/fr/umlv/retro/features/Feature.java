@@ -0,0 +1,72 @@
+package fr.umlv.retro.features;
+
+import java.util.List;
+
+/**
+ * Kinds of features detected by retro, with the Java version which introduced each of them
+ * @author PJBesnard
+ *
+ */
+public enum Feature {
+	/** lambdas and method references */
+	LAMBDA(8),
+	/** string concatenations with invokedynamic */
+	CONCATENATION(9),
+	/** nest hosts and nest members */
+	NESTMATES(11),
+	/** record classes */
+	RECORD(14),
+	/** try-with-resources blocks */
+	TRY_WITH_RESOURCES(7);
+
+	private static final List<Feature> FEATURES = List.of(values());
+
+	private final int version;
+
+	/**
+	 * Creates a new Feature
+	 * @param version the Java version which introduced the feature
+	 */
+	private Feature(int version) {
+		this.version = version;
+	}
+
+	/**
+	 * Gets the Java version which introduced the feature
+	 * @return the Java version of the feature
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Gets the bit of the feature in the masks of features
+	 * @return the bit of the feature
+	 */
+	long bit() {
+		return 1L << ordinal();
+	}
+
+	/**
+	 * Gets all the features, in the order of the logs of -info
+	 * @return all the features
+	 */
+	public static List<Feature> all() {
+		return FEATURES;
+	}
+
+	/**
+	 * Gets the feature of a name given by the user
+	 * @param name the name of the feature
+	 * @return the feature of the name
+	 * @throws IllegalArgumentException if no feature has this name
+	 */
+	public static Feature of(String name) {
+		for (Feature feature : FEATURES) {
+			if (feature.name().equals(name)) {
+				return feature;
+			}
+		}
+		throw new IllegalArgumentException("feature " + name + " doesn't exist");
+	}
+}
@@ -9,10 +9,8 @@ public interface FeaturesObserver {
 	
 	/**
 	 * Do things when a new feature is added
-	 * @param classVersion Version of the class file
-	 * @param featureName Name of the feature
-	 * @param log Log of the feature
+	 * @param feature the feature detected
 	 */
-	public void onFeatureDetected(int classVersion, String featureName, String log);
+	public void onFeatureDetected(CodeFeature feature);
 	
 }
@@ -1,23 +1,216 @@
 package fr.umlv.retro.features;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.StringJoiner;
 
 /**
- * Observer, had to be used with NeutralVisitor, stocks a list of features contains in a classFile
+ * Observer, had to be used with NeutralVisitor, stocks a list of features contains in a classFile.
+ * The features are stocked in columns of int, the strings are interned in a table so the names of the
+ * classes and methods shared by several features are stocked once. A CodeFeature is only created when
+ * a feature is asked. The indexes of the features of each kind are stocked apart, so the features of a
+ * kind are found without reading the others. The stocker is the aggregate view of a run, the features of each class are
+ * given by a ClassFeatures which also knows the kinds of features of the class.
  * @author PJBesnard
  *
  */
 public class FeaturesStocker implements FeaturesObserver {
-	private final List<CodeFeature> features = new ArrayList<>();
+	private static final int NONE = -1;
+
+	private final HashMap<String, Integer> indexes = new HashMap<>();
+	private final ArrayList<String> strings = new ArrayList<>();
+	private final int[][] indexesByKind = new int[Feature.all().size()][16];
+	private final int[] sizesByKind = new int[Feature.all().size()];
+	private int size;
+	private int classStart;
+	private long classMask;
+	private int[] kinds = new int[16];
+	private int[] versions = new int[16];
+	private int[] lines = new int[16];
+	private int[] owners = new int[16];
+	private int[] methods = new int[16];
+	private int[] descriptors = new int[16];
+	private int[] payloadStarts = new int[17];
+	private int[] payloads = new int[16];
+
+	/**
+	 * Return the index of a string in the table, the string is added if it is not in it
+	 * @param s the string
+	 * @return the index of the string, or -1 for null
+	 */
+	private int intern(String s) {
+		if (s == null) {
+			return NONE;
+		}
+		Integer index = indexes.get(s);
+		if (index == null) {
+			index = strings.size();
+			indexes.put(s, index);
+			strings.add(s);
+		}
+		return index;
+	}
+
+	/**
+	 * Return the string at an index of the table
+	 * @param index the index of the string, or -1
+	 * @return the string, or null for -1
+	 */
+	private String string(int index) {
+		return index == NONE ? null : strings.get(index);
+	}
+
+	/**
+	 * Make sure the columns can stock one more feature with its payload
+	 * @param payloadSize the size of the payload of the feature
+	 */
+	private void ensureCapacity(int payloadSize) {
+		if (size == kinds.length) {
+			int capacity = size * 2;
+			kinds = Arrays.copyOf(kinds, capacity);
+			versions = Arrays.copyOf(versions, capacity);
+			lines = Arrays.copyOf(lines, capacity);
+			owners = Arrays.copyOf(owners, capacity);
+			methods = Arrays.copyOf(methods, capacity);
+			descriptors = Arrays.copyOf(descriptors, capacity);
+			payloadStarts = Arrays.copyOf(payloadStarts, capacity + 1);
+		}
+		int needed = payloadStarts[size] + payloadSize;
+		if (needed > payloads.length) {
+			payloads = Arrays.copyOf(payloads, Math.max(needed, payloads.length * 2));
+		}
+	}
+
+	/**
+	 * Add the index of a feature to the indexes of its kind
+	 * @param kind the kind of the feature
+	 * @param index the index of the feature
+	 */
+	private void index(Feature kind, int index) {
+		int ordinal = kind.ordinal();
+		int[] indexes = indexesByKind[ordinal];
+		if (sizesByKind[ordinal] == indexes.length) {
+			indexes = Arrays.copyOf(indexes, indexes.length * 2);
+			indexesByKind[ordinal] = indexes;
+		}
+		indexes[sizesByKind[ordinal]++] = index;
+	}
+
+	/**
+	 * Start the features of a new class
+	 */
+	public void beginClass() {
+		classStart = size;
+		classMask = 0;
+	}
+
+	/**
+	 * End the features of the current class
+	 * @return the features detected since the last call to beginClass
+	 */
+	public ClassFeatures endClass() {
+		return new ClassFeatures(this, classStart, size, classMask);
+	}
 
 	/**
 	 * Stocks in features a new feature detected
 	 */
 	@Override
-	public void onFeatureDetected(int classVersion, String featureName, String log) {
-		features.add(new CodeFeature(classVersion, featureName, log));
+	public void onFeatureDetected(CodeFeature feature) {
+		Feature kind = feature.getFeature();
+		classMask |= kind.bit();
+		List<String> payload = feature.getPayload();
+		ensureCapacity(payload.size());
+		index(kind, size);
+		kinds[size] = kind.ordinal();
+		versions[size] = feature.getClassVersion();
+		lines[size] = feature.getLine();
+		owners[size] = intern(feature.getOwner());
+		methods[size] = intern(feature.getMethod());
+		descriptors[size] = intern(feature.getDescriptor());
+		int start = payloadStarts[size];
+		for (String s : payload) {
+			payloads[start++] = intern(s);
+		}
+		payloadStarts[size + 1] = start;
+		size++;
+	}
+
+	/**
+	 * Stocks the features of another stocker after the features of this one, the strings of the other
+	 * stocker are interned once, and no CodeFeature is created
+	 * @param other the stocker to copy, it must not be modified during the copy
+	 */
+	public void addAll(FeaturesStocker other) {
+		int[] mapping = new int[other.strings.size()];
+		for (int i = 0; i < mapping.length; i++) {
+			mapping[i] = intern(other.strings.get(i));
+		}
+		for (int i = 0; i < other.size; i++) {
+			int from = other.payloadStarts[i];
+			int to = other.payloadStarts[i + 1];
+			ensureCapacity(to - from);
+			Feature kind = Feature.all().get(other.kinds[i]);
+			classMask |= kind.bit();
+			index(kind, size);
+			kinds[size] = other.kinds[i];
+			versions[size] = other.versions[i];
+			lines[size] = other.lines[i];
+			owners[size] = mapping[other.owners[i]];
+			methods[size] = other.methods[i] == NONE ? NONE : mapping[other.methods[i]];
+			descriptors[size] = other.descriptors[i] == NONE ? NONE : mapping[other.descriptors[i]];
+			int start = payloadStarts[size];
+			for (int j = from; j < to; j++) {
+				payloads[start++] = mapping[other.payloads[j]];
+			}
+			payloadStarts[size + 1] = start;
+			size++;
+		}
+	}
+
+	/**
+	 * Get the number of features detected
+	 * @return the number of features detected
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the number of features of a kind detected
+	 * @param kind the kind of the features
+	 * @return the number of features of the kind
+	 */
+	public int count(Feature kind) {
+		return sizesByKind[kind.ordinal()];
+	}
+
+	/**
+	 * Check the index of a feature
+	 * @param index the index of the feature
+	 */
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+		}
+	}
+
+	/**
+	 * Create a feature from the columns
+	 * @param index the index of the feature
+	 * @return the feature
+	 */
+	public CodeFeature getFeature(int index) {
+		checkIndex(index);
+		List<String> payload = new ArrayList<>(payloadStarts[index + 1] - payloadStarts[index]);
+		for (int i = payloadStarts[index]; i < payloadStarts[index + 1]; i++) {
+			payload.add(strings.get(payloads[i]));
+		}
+		return new CodeFeature(versions[index], Feature.all().get(kinds[index]), strings.get(owners[index]),
+				string(methods[index]), string(descriptors[index]), lines[index], payload);
 	}
 
 	/**
@@ -26,27 +219,69 @@ public class FeaturesStocker implements FeaturesObserver {
 	 */
 	public String getAllFeaturesLog() {
 		var sj = new StringJoiner("\n");
-		features.forEach(feature -> sj.add(feature.getLog()));
+		for (int i = 0; i < size; i++) {
+			sj.add(getFeature(i).getLog());
+		}
 		return sj.toString();
 	}
-	
-	public String getFeaturesLog(List<String> features) {
+
+	/**
+	 * Get the logs of the asked features
+	 * @param features the kinds of the asked features
+	 * @return the logs of the asked features, in the order of the asked kinds
+	 */
+	public String getFeaturesLog(List<Feature> features) {
+		return getFeaturesLog(features, 0, size);
+	}
+
+	/**
+	 * Get the logs of the asked features of a range of features, only the indexes of the asked kinds
+	 * which are in the range are read
+	 * @param features the kinds of the asked features
+	 * @param from the index of the first feature of the range
+	 * @param to the index after the last feature of the range
+	 * @return the logs of the asked features, in the order of the asked kinds
+	 */
+	String getFeaturesLog(List<Feature> features, int from, int to) {
 		var sj = new StringJoiner("\n");
-		features.forEach(name -> {
-			this.features.forEach(feature -> {
-				if (feature.getName().equals(name)) {
-					sj.add(feature.getLog());
-				}
-			});
-		});
+		for (Feature kind : features) {
+			int[] indexes = indexesByKind[kind.ordinal()];
+			int count = sizesByKind[kind.ordinal()];
+			int i = Arrays.binarySearch(indexes, 0, count, from);
+			for (i = i < 0 ? -i - 1 : i; i < count && indexes[i] < to; i++) {
+				sj.add(getFeature(indexes[i]).getLog());
+			}
+		}
 		return sj.toString();
 	}
 
 	/**
-	 * Get all features detected
+	 * Forget all features detected
+	 */
+	public void clear() {
+		size = 0;
+		classStart = 0;
+		classMask = 0;
+		Arrays.fill(sizesByKind, 0);
+		indexes.clear();
+		strings.clear();
+	}
+
+	/**
+	 * Get all features detected, the features are created when they are read from the list
 	 * @return a List version of all features detected
 	 */
 	public List<CodeFeature> getFeatures() {
-		return features;
+		return new AbstractList<>() {
+			@Override
+			public CodeFeature get(int index) {
+				return getFeature(index);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
 	}
 }
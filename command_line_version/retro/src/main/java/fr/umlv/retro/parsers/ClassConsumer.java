@@ -0,0 +1,20 @@
+package fr.umlv.retro.parsers;
+
+import java.io.IOException;
+
+/**
+ * Receives the content of every .class found by a FileParser
+ * @author LBillaut
+ *
+ */
+@FunctionalInterface
+public interface ClassConsumer {
+
+	/**
+	 * Do things with a class file read by the parser
+	 * @param className the name of the class file
+	 * @param bytes the content of the class file
+	 * @throws IOException if the class can't be processed
+	 */
+	public void accept(String className, byte[] bytes) throws IOException;
+}
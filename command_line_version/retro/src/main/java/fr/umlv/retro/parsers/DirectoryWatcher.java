@@ -0,0 +1,164 @@
+package fr.umlv.retro.parsers;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watch directories and their sub directories and give the .class created or modified to a consumer.
+ * A directory can be excluded with its sub directories, like the directory which receives the classes.
+ * @author LBillaut
+ *
+ */
+public class DirectoryWatcher implements Closeable {
+	private static final long SETTLE_MILLIS = 50;
+
+	private final WatchService watchService;
+	private final Map<WatchKey, Path> directories = new HashMap<>();
+	private final Path excluded;
+
+	/**
+	 * Creates a new DirectoryWatcher
+	 * @param directories the directories to watch
+	 * @param excluded the directory which is not watched even if it is in a watched directory, or null
+	 * @throws IOException if a directory can't be watched
+	 */
+	public DirectoryWatcher(List<String> directories, Path excluded) throws IOException {
+		this.excluded = excluded == null ? null : excluded.toAbsolutePath().normalize();
+		for (String s : directories) {
+			if (!Files.isDirectory(Paths.get(s))) {
+				throw new IllegalArgumentException(s + " is not a valid directory");
+			}
+		}
+		watchService = FileSystems.getDefault().newWatchService();
+		try {
+			for (String s : directories) {
+				register(Paths.get(s), null);
+			}
+		} catch (IOException e) {
+			watchService.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Test if a path is the excluded directory or is in it
+	 * @param path the path to test
+	 * @return True if the path is excluded, False either
+	 */
+	private boolean isExcluded(Path path) {
+		return excluded != null && path.toAbsolutePath().normalize().startsWith(excluded);
+	}
+
+	/**
+	 * Watch a directory and its sub directories, except the excluded directory
+	 * @param directory the directory to watch
+	 * @param classes the set which receives the .class already in the directory, or null
+	 * @throws IOException if a directory can't be watched
+	 */
+	private void register(Path directory, Set<Path> classes) throws IOException {
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				if (isExcluded(dir)) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), dir);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (classes != null && attrs.isRegularFile() && file.getFileName().toString().endsWith(".class")) {
+					classes.add(file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Add to the set the .class changed according to the events of a key
+	 * @param key the key which received events
+	 * @param changed the set of the changed .class
+	 * @throws IOException if a new directory can't be watched
+	 */
+	private void collect(WatchKey key, Set<Path> changed) throws IOException {
+		Path directory = directories.get(key);
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (directory == null) {
+				break;
+			}
+			if (event.kind() == OVERFLOW) {
+				register(directory, changed);
+				continue;
+			}
+			Path path = directory.resolve((Path) event.context());
+			if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+				register(path, changed);
+			} else if (path.getFileName().toString().endsWith(".class")) {
+				changed.add(path);
+			}
+		}
+		if (!key.reset()) {
+			directories.remove(key);
+		}
+	}
+
+	/**
+	 * Wait for changes and give each created or modified .class to the consumer. The events which arrive
+	 * close together are grouped so a class written in several times is given only once.
+	 * This method never returns normally.
+	 * @param consumer the consumer of the classes
+	 * @throws IOException if a directory can't be watched or a class can't be processed
+	 * @throws InterruptedException if the thread is interrupted while waiting for changes
+	 */
+	public void watch(ClassConsumer consumer) throws IOException, InterruptedException {
+		Objects.requireNonNull(consumer);
+		for (;;) {
+			Set<Path> changed = new LinkedHashSet<>();
+			WatchKey key = watchService.take();
+			do {
+				collect(key, changed);
+			} while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+			for (Path path : changed) {
+				byte[] bytes;
+				try {
+					bytes = Files.readAllBytes(path);
+				} catch (NoSuchFileException e) {
+					continue;
+				}
+				consumer.accept(path.toString(), bytes);
+			}
+		}
+	}
+
+	/**
+	 * Stop watching the directories
+	 */
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+	}
+}
@@ -0,0 +1,231 @@
+package fr.umlv.retro.parsers;
+
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+import org.objectweb.asm.ClassReader;
+
+/**
+ * Scans the constant pool, the attributes and the bytecode of a class file without visiting it, to know if
+ * the class may contain a feature and to find the methods whose code contains an instruction used by
+ * a feature: an invokedynamic or a call to addSuppressed
+ * @author LBillaut
+ *
+ */
+public class FeatureScanner {
+	private static final int METHODREF = 10;
+	private static final int INVOKEDYNAMIC = 18;
+	private static final int INVOKEVIRTUAL_OPCODE = 0xB6;
+	private static final int INVOKEDYNAMIC_OPCODE = 0xBA;
+	private static final int TABLESWITCH_OPCODE = 0xAA;
+	private static final int LOOKUPSWITCH_OPCODE = 0xAB;
+	private static final int WIDE_OPCODE = 0xC4;
+	private static final int IINC_OPCODE = 0x84;
+	private static final byte[] LENGTHS = opcodeLengths();
+
+	private final ClassReader reader;
+	private final char[] buffer;
+	private final Set<Integer> addSuppressedRefs = new HashSet<>();
+	private final Set<String> featureMethods = new HashSet<>();
+	private boolean invokeDynamic;
+	private boolean featureAttribute;
+
+	/**
+	 * Creates a new FeatureScanner and scans the class
+	 * @param reader the reader of the class to scan
+	 */
+	public FeatureScanner(ClassReader reader) {
+		this.reader = Objects.requireNonNull(reader);
+		this.buffer = new char[reader.getMaxStringLength()];
+		scanConstantPool();
+		scanClass();
+	}
+
+	/**
+	 * Creates the table of the length of the instructions of fixed size, 0 for the others
+	 * @return the length of each opcode
+	 */
+	private static byte[] opcodeLengths() {
+		byte[] lengths = new byte[256];
+		fill(lengths, 0x00, 0xC9, 1);
+		fill(lengths, 0x10, 0x10, 2);
+		fill(lengths, 0x11, 0x11, 3);
+		fill(lengths, 0x12, 0x12, 2);
+		fill(lengths, 0x13, 0x14, 3);
+		fill(lengths, 0x15, 0x19, 2);
+		fill(lengths, 0x36, 0x3A, 2);
+		fill(lengths, 0x84, 0x84, 3);
+		fill(lengths, 0x99, 0xA8, 3);
+		fill(lengths, 0xA9, 0xA9, 2);
+		fill(lengths, 0xAA, 0xAB, 0);
+		fill(lengths, 0xB2, 0xB8, 3);
+		fill(lengths, 0xB9, 0xBA, 5);
+		fill(lengths, 0xBB, 0xBB, 3);
+		fill(lengths, 0xBC, 0xBC, 2);
+		fill(lengths, 0xBD, 0xBD, 3);
+		fill(lengths, 0xC0, 0xC1, 3);
+		fill(lengths, 0xC4, 0xC4, 0);
+		fill(lengths, 0xC5, 0xC5, 4);
+		fill(lengths, 0xC6, 0xC7, 3);
+		fill(lengths, 0xC8, 0xC9, 5);
+		return lengths;
+	}
+
+	/**
+	 * Set the length of a range of opcodes
+	 * @param lengths the table of the lengths
+	 * @param first the first opcode of the range
+	 * @param last the last opcode of the range
+	 * @param length the length of the instructions
+	 */
+	private static void fill(byte[] lengths, int first, int last, int length) {
+		for (int i = first; i <= last; i++) {
+			lengths[i] = (byte) length;
+		}
+	}
+
+	/**
+	 * Find the invokedynamic entries and the references to addSuppressed in the constant pool
+	 */
+	private void scanConstantPool() {
+		for (int i = 1; i < reader.getItemCount(); i++) {
+			int offset = reader.getItem(i);
+			if (offset == 0) {
+				continue;
+			}
+			switch (reader.readByte(offset - 1)) {
+			case INVOKEDYNAMIC: invokeDynamic = true; break;
+			case METHODREF:
+				int nameAndType = reader.getItem(reader.readUnsignedShort(offset + 2));
+				if ("addSuppressed".equals(reader.readUTF8(nameAndType, buffer))) {
+					addSuppressedRefs.add(i);
+				}
+				break;
+			default: break;
+			}
+		}
+	}
+
+	/**
+	 * Test if a method of the class may contain a feature
+	 * @return True if the constant pool has an invokedynamic entry or a reference to addSuppressed, False either
+	 */
+	private boolean hasFeatureCode() {
+		return invokeDynamic || !addSuppressedRefs.isEmpty();
+	}
+
+	/**
+	 * Test if the class may contain a feature, the classes for which it is False don't need to be detected
+	 * @return True if the class has a method which may contain a feature, a BootstrapMethods, NestMembers
+	 * or NestHost attribute or is a Record, False either
+	 */
+	public boolean mayContainFeatures() {
+		return !featureMethods.isEmpty() || featureAttribute || "java/lang/Record".equals(reader.getSuperName());
+	}
+
+	/**
+	 * Skip the attributes which start at an offset
+	 * @param offset the offset of the number of attributes
+	 * @return the offset after the attributes
+	 */
+	private int skipAttributes(int offset) {
+		int count = reader.readUnsignedShort(offset);
+		offset += 2;
+		for (int i = 0; i < count; i++) {
+			offset += 6 + reader.readInt(offset + 2);
+		}
+		return offset;
+	}
+
+	/**
+	 * Test if the bytecode of a method contains an instruction used by a feature
+	 * @param start the offset of the first instruction
+	 * @param end the offset after the last instruction
+	 * @return True if the bytecode contains an invokedynamic, a call to addSuppressed or an unknown opcode, False either
+	 */
+	private boolean scanCode(int start, int end) {
+		int offset = start;
+		while (offset < end) {
+			int opcode = reader.readByte(offset);
+			switch (opcode) {
+			case INVOKEDYNAMIC_OPCODE: return true;
+			case INVOKEVIRTUAL_OPCODE:
+				if (addSuppressedRefs.contains(reader.readUnsignedShort(offset + 1))) {
+					return true;
+				}
+				offset += 3;
+				break;
+			case TABLESWITCH_OPCODE:
+				offset += 4 - (offset - start & 3);
+				offset += 12 + 4 * (reader.readInt(offset + 8) - reader.readInt(offset + 4) + 1);
+				break;
+			case LOOKUPSWITCH_OPCODE:
+				offset += 4 - (offset - start & 3);
+				offset += 8 + 8 * reader.readInt(offset + 4);
+				break;
+			case WIDE_OPCODE: offset += reader.readByte(offset + 1) == IINC_OPCODE ? 6 : 4; break;
+			default:
+				if (LENGTHS[opcode] == 0) {
+					return true;
+				}
+				offset += LENGTHS[opcode];
+				break;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Walk the fields, the methods and the attributes of the class, scan the code of the methods if the
+	 * constant pool allows a feature and look for the attributes of the features
+	 */
+	private void scanClass() {
+		int offset = reader.header + 6;
+		offset += 2 + 2 * reader.readUnsignedShort(offset);
+		int fields = reader.readUnsignedShort(offset);
+		offset += 2;
+		for (int i = 0; i < fields; i++) {
+			offset = skipAttributes(offset + 6);
+		}
+		int methods = reader.readUnsignedShort(offset);
+		offset += 2;
+		for (int i = 0; i < methods; i++) {
+			if (!hasFeatureCode()) {
+				offset = skipAttributes(offset + 6);
+				continue;
+			}
+			String name = reader.readUTF8(offset + 2, buffer);
+			String descriptor = reader.readUTF8(offset + 4, buffer);
+			int attributes = reader.readUnsignedShort(offset + 6);
+			offset += 8;
+			for (int j = 0; j < attributes; j++) {
+				int length = reader.readInt(offset + 2);
+				if ("Code".equals(reader.readUTF8(offset, buffer))) {
+					int start = offset + 14;
+					if (scanCode(start, start + reader.readInt(offset + 10))) {
+						featureMethods.add(name + descriptor);
+					}
+				}
+				offset += 6 + length;
+			}
+		}
+		int attributes = reader.readUnsignedShort(offset);
+		offset += 2;
+		for (int i = 0; i < attributes; i++) {
+			switch (reader.readUTF8(offset, buffer)) {
+			case "BootstrapMethods": case "NestMembers": case "NestHost": featureAttribute = true; break;
+			default: break;
+			}
+			offset += 6 + reader.readInt(offset + 2);
+		}
+	}
+
+	/**
+	 * Return the methods whose code contains an instruction used by a feature
+	 * @return the name followed by the descriptor of each of these methods
+	 */
+	public Set<String> methodsWithFeatureCode() {
+		return featureMethods;
+	}
+}
@@ -1,13 +1,22 @@
 package fr.umlv.retro.parsers;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Enumeration;
-import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.stream.Stream;
+import java.util.zip.ZipException;
 
 /**
  * Parse a file directory
@@ -15,93 +24,199 @@ import java.util.jar.JarFile;
  *
  */
 public class FileParser {
-	private final List<String> files = new ArrayList<String>();
-	
+	private final ForkJoinPool pool;
+	private final IoPool io;
+	private final int buffer;
+
 	/**
-	 * Add a class file to the file list
+	 * Creates a FileParser
+	 * @param pool the pool which inflates the entries of the jars
+	 * @param io the pool which reads the class files of the directories, or null to read them on the calling thread
+	 * @param buffer the number of bytes which can be read ahead of the consumer
+	 */
+	public FileParser(ForkJoinPool pool, IoPool io, int buffer) {
+		if (buffer < 1) {
+			throw new IllegalArgumentException("The buffer must be greater than 0");
+		}
+		this.pool = Objects.requireNonNull(pool);
+		this.io = io;
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Read a class file and give it to the consumer
 	 * @param s the .class name
+	 * @param consumer the consumer of the class
+	 * @throws IOException if the class file can't be read
 	 */
-	private void addClass(String s) {
-		files.add(s);
+	private void readAndAcceptClass(String s, ClassConsumer consumer) throws IOException {
+		consumer.accept(s, Files.readAllBytes(Paths.get(s)));
 	}
-	
+
 	/**
-	 * Add a class file of a Jar to the file list
-	 * @param jarFile the owner jar 
+	 * Read a class file of a Jar straight from the jar and give it to the consumer
+	 * @param jarFile the owner jar
 	 * @param entry the owner jar entry
-	 * @param s the owner jar name
-	 * @throws IOException if the jar file can't be open
+	 * @param consumer the consumer of the class
+	 * @throws IOException if the jar entry can't be read
 	 */
-	private void addClassOfJar(JarFile jarFile, JarEntry entry, String s) throws IOException {
+	private void acceptClassOfJar(JarFile jarFile, JarEntry entry, ClassConsumer consumer) throws IOException {
 		if (entry.getName().endsWith(".class")) {
+			byte[] bytes;
 			try (InputStream inputStream = jarFile.getInputStream(entry)) {
-				files.add(s + "/" + entry.getName());
+				bytes = inputStream.readAllBytes();
 			} catch (IOException ioException) {
 				System.out.println("Invalid entry for " + entry.getName());
 				throw ioException;
 			}
+			consumer.accept(entry.getName(), bytes);
 		}
 	}
-	
+
 	/**
-	 * Read a Jar file and add all his .class in the file list
+	 * Read a Jar file entry after entry and give all his .class to the consumer, without extracting them
 	 * @param s the owner jar name
+	 * @param consumer the consumer of the classes
 	 * @throws IOException if the jar file can't be open
 	 */
-	private void readAndAddJar(String s) throws IOException {
+	private void readAndAcceptJarEntries(String s, ClassConsumer consumer) throws IOException {
 		try (JarFile jarFile = new JarFile(s)) {
 			Enumeration<JarEntry> entries = jarFile.entries();
 			while (entries.hasMoreElements()) {
 				JarEntry entry = entries.nextElement();
-				addClassOfJar(jarFile, entry, s);			
+				acceptClassOfJar(jarFile, entry, consumer);
 			}
 		}
 	}
-	
+
 	/**
-	 * Add all .class of a file to the files list
-	 * @param listOfFiles the list of files
-	 * @param s the owner file name
+	 * Read a Jar file and give all his .class to the consumer, the entries are inflated in parallel
+	 * from the mapped jar when possible
+	 * @param s the owner jar name
+	 * @param consumer the consumer of the classes
+	 * @throws IOException if the jar file can't be open
 	 */
-	private void addClassOfFile(File[] listOfFiles, String s) {
-		for (File file : listOfFiles) {
-		    if (file.isFile()) {
-		    	if(file.getName().endsWith(".class")) {
-		    		files.add(s + "/" + file.getName());
-		    	}
-		    }
+	private void readAndAcceptJar(String s, ClassConsumer consumer) throws IOException {
+		MappedJarReader jarReader;
+		try {
+			jarReader = new MappedJarReader(s);
+		} catch (ZipException e) {
+			readAndAcceptJarEntries(s, consumer);
+			return;
+		}
+		try (jarReader) {
+			jarReader.readClasses(pool, buffer, consumer);
 		}
 	}
-	
+
 	/**
-	 * Read all the files in a directory
+	 * Wait for the read of a class file and give it to the consumer
+	 * @param file the class file
+	 * @param read the read of the class file
+	 * @param consumer the consumer of the class
+	 * @throws IOException if the class file can't be read or processed
+	 */
+	private static void acceptRead(Path file, Future<byte[]> read, ClassConsumer consumer) throws IOException {
+		consumer.accept(file.toString(), IoPool.await(read));
+	}
+
+	/**
+	 * Consumer of the class files found by the walk of a directory
+	 */
+	@FunctionalInterface
+	private interface ClassFileConsumer {
+		/**
+		 * Receive a class file found by the walk
+		 * @param file the class file
+		 * @param size the size of the class file
+		 * @throws IOException if the class file can't be read or processed
+		 */
+		void accept(Path file, long size) throws IOException;
+	}
+
+	/**
+	 * Walk a directory and its sub directories and give each .class to the consumer as soon as it is found.
+	 * The entries of a directory are listed and sorted when the walk reaches it, and each sub directory is
+	 * walked at its place among them, so the order doesn't depend on the file system and the tree is never
+	 * listed as a whole. The links are not followed.
+	 * @param directory the directory to walk
+	 * @param consumer the consumer of the class files
+	 * @throws IOException if a directory can't be listed or a class file can't be read
+	 */
+	private static void walk(Path directory, ClassFileConsumer consumer) throws IOException {
+		Path[] entries;
+		try (Stream<Path> list = Files.list(directory)) {
+			entries = list.toArray(Path[]::new);
+		}
+		Arrays.sort(entries);
+		for (Path entry : entries) {
+			BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			if (attrs.isDirectory()) {
+				walk(entry, consumer);
+			} else if (attrs.isRegularFile() && entry.getFileName().toString().endsWith(".class")) {
+				consumer.accept(entry, attrs.size());
+			}
+		}
+	}
+
+	/**
+	 * Walk a directory and its sub directories and give each .class to the consumer in a sorted order.
+	 * With an IoPool the class files are read on its threads as soon as the walk finds them, ahead of the
+	 * consumer as long as their sizes fit in the buffer, and given to the consumer in the same order on the
+	 * calling thread.
 	 * @param s the owner file name
+	 * @param consumer the consumer of the classes
+	 * @throws IOException if a class file can't be read
 	 */
-	private void readAndAddFile(String s) throws IllegalArgumentException {
-		File folder = new File(s);
-		File[] listOfFiles = folder.listFiles();
-		if(listOfFiles == null) {
+	private void readAndAcceptFile(String s, ClassConsumer consumer) throws IOException {
+		Path folder = Paths.get(s);
+		if (!Files.isDirectory(folder)) {
 			throw new IllegalArgumentException(s + " is not a valid file");
 		}
-		addClassOfFile(listOfFiles, s);
+		if (io == null) {
+			walk(folder, (file, size) -> consumer.accept(file.toString(), Files.readAllBytes(file)));
+			return;
+		}
+		ArrayDeque<Path> names = new ArrayDeque<>();
+		ArrayDeque<Future<byte[]>> reads = new ArrayDeque<>();
+		ArrayDeque<Long> sizes = new ArrayDeque<>();
+		long[] pending = { 0 };
+		try {
+			walk(folder, (file, size) -> {
+				names.add(file);
+				reads.add(io.submit(() -> Files.readAllBytes(file)));
+				sizes.add(size);
+				pending[0] += size;
+				while (pending[0] > buffer && reads.size() > 1) {
+					pending[0] -= sizes.poll();
+					acceptRead(names.poll(), reads.poll(), consumer);
+				}
+			});
+			while (!reads.isEmpty()) {
+				acceptRead(names.poll(), reads.poll(), consumer);
+			}
+		} finally {
+			reads.forEach(read -> read.cancel(false));
+		}
 	}
-	
+
 	/**
-	 * Read a file and add all .class to the files list
+	 * Read a file and give all his .class to the consumer, one at a time
 	 * @param s the owner file name
-	 * @throws IOException if an error is encountered while opening a file 
+	 * @param consumer the consumer of the classes
+	 * @throws IOException if an error is encountered while opening a file
 	 */
-	public List<String> readFile(String s) throws IOException {
-		if (s == null) { return files;}
+	public void readFile(String s, ClassConsumer consumer) throws IOException {
+		Objects.requireNonNull(consumer);
+		if (s == null) { return; }
 		if(s.endsWith(".class")) {
-			addClass(s);
+			readAndAcceptClass(s, consumer);
 		}
 		else if(s.endsWith(".jar")) {
-			readAndAddJar(s);
+			readAndAcceptJar(s, consumer);
 		}
 		else {
-			readAndAddFile(s);
+			readAndAcceptFile(s, consumer);
 		}
-		return files;
 	}
 }
@@ -0,0 +1,55 @@
+package fr.umlv.retro.parsers;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+/**
+ * Parse a stream of classes, each class is a frame made of its length as a big-endian int followed by its bytes
+ * @author LBillaut
+ *
+ */
+public class FrameParser {
+
+	/**
+	 * Read the length of the next frame
+	 * @param in the stream of frames
+	 * @return the length of the frame, or -1 at the end of the stream
+	 * @throws IOException if the stream ends in the middle of the length
+	 */
+	private int readLength(DataInputStream in) throws IOException {
+		int first = in.read();
+		if (first == -1) {
+			return -1;
+		}
+		int length = first << 24 | in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+		if (length < 0) {
+			throw new IOException("Invalid frame length " + length);
+		}
+		return length;
+	}
+
+	/**
+	 * Read all the frames of the stream and give each class to the consumer as soon as it is read
+	 * @param input the stream of frames
+	 * @param consumer the consumer of the classes, the name of a class is its position in the stream
+	 * @throws IOException if the stream ends in the middle of a frame or a class can't be processed
+	 */
+	public void readFrames(InputStream input, ClassConsumer consumer) throws IOException {
+		Objects.requireNonNull(consumer);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+		int length;
+		for (int i = 0; (length = readLength(in)) != -1; i++) {
+			byte[] bytes = new byte[length];
+			try {
+				in.readFully(bytes);
+			} catch (EOFException e) {
+				throw new IOException("Truncated frame " + i, e);
+			}
+			consumer.accept("stdin#" + i, bytes);
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package fr.umlv.retro.parsers;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Threads which make the blocking reads and writes of the class files, so the workers of the
+ * ForkJoinPool only detect and rewrite the classes. A worker waiting for a read or a write declares it
+ * to its pool, which can start another worker in the meantime.
+ * @author LBillaut
+ *
+ */
+public class IoPool implements AutoCloseable {
+	private final ExecutorService executor;
+	private final int threads;
+
+	/**
+	 * Creates a new IoPool
+	 * @param threads the number of threads, the reads and writes in progress at the same time
+	 */
+	public IoPool(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("The number of I/O threads must be greater than 0");
+		}
+		this.threads = threads;
+		this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "retro-io");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Gets the number of threads of the pool
+	 * @return the number of threads
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Run a read or a write on a thread of the pool
+	 * @param <T> the type of the result
+	 * @param task the read or the write
+	 * @return the future result of the task
+	 */
+	public <T> Future<T> submit(Callable<T> task) {
+		return executor.submit(task);
+	}
+
+	/**
+	 * Wait for the result of a read or a write, the waiting is declared to the pool of the caller
+	 * if the caller is a worker of a ForkJoinPool
+	 * @param <T> the type of the result
+	 * @param future the future result of the read or the write
+	 * @return the result
+	 * @throws IOException if the task has failed
+	 */
+	public static <T> T await(Future<T> future) throws IOException {
+		try {
+			ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+				@Override
+				public boolean block() throws InterruptedException {
+					try {
+						future.get();
+					} catch (ExecutionException e) {
+						// reported by the get below
+					}
+					return true;
+				}
+
+				@Override
+				public boolean isReleasable() {
+					return future.isDone();
+				}
+			});
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for an I/O", e);
+		}
+	}
+
+	/**
+	 * Stop the threads once the submitted reads and writes are done
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+}
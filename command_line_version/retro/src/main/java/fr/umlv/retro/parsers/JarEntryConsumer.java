@@ -0,0 +1,20 @@
+package fr.umlv.retro.parsers;
+
+import java.io.IOException;
+
+/**
+ * Receives every entry of a jar read by a MappedJarReader
+ * @author LBillaut
+ *
+ */
+@FunctionalInterface
+public interface JarEntryConsumer {
+
+	/**
+	 * Do things with an entry of the jar
+	 * @param record the entry of the central directory
+	 * @param bytes the uncompressed content if the entry is a .class, null either
+	 * @throws IOException if the entry can't be processed
+	 */
+	public void accept(JarRecord record, byte[] bytes) throws IOException;
+}
@@ -0,0 +1,119 @@
+package fr.umlv.retro.parsers;
+
+import java.util.Objects;
+
+/**
+ * Stocks an entry of the central directory of a jar file
+ * @author LBillaut
+ *
+ */
+public class JarRecord {
+	/**
+	 * Compression method of an entry stored without compression
+	 */
+	public static final int STORED = 0;
+	/**
+	 * Compression method of a deflated entry
+	 */
+	public static final int DEFLATED = 8;
+
+	private final String name;
+	private final int method;
+	private final long crc;
+	private final int compressedSize;
+	private final int size;
+	private final int localHeaderOffset;
+	private final int dosTime;
+
+	/**
+	 * Creates a new JarRecord
+	 * @param name the name of the entry
+	 * @param method the compression method of the entry
+	 * @param crc the CRC-32 of the uncompressed content
+	 * @param compressedSize the size of the compressed content
+	 * @param size the size of the uncompressed content
+	 * @param localHeaderOffset the offset of the local header of the entry in the jar
+	 * @param dosTime the last modification date (high bits) and time (low bits) of the entry in MS-DOS format
+	 */
+	public JarRecord(String name, int method, long crc, int compressedSize, int size, int localHeaderOffset, int dosTime) {
+		this.name = Objects.requireNonNull(name);
+		this.method = method;
+		this.crc = crc;
+		this.compressedSize = compressedSize;
+		this.size = size;
+		this.localHeaderOffset = localHeaderOffset;
+		this.dosTime = dosTime;
+	}
+
+	/**
+	 * gets the name of the entry
+	 * @return the name of the entry
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * gets the compression method of the entry
+	 * @return STORED or DEFLATED
+	 */
+	public int getMethod() {
+		return method;
+	}
+
+	/**
+	 * gets the CRC-32 of the uncompressed content
+	 * @return the CRC-32 of the uncompressed content
+	 */
+	public long getCrc() {
+		return crc;
+	}
+
+	/**
+	 * gets the size of the compressed content
+	 * @return the size of the compressed content
+	 */
+	public int getCompressedSize() {
+		return compressedSize;
+	}
+
+	/**
+	 * gets the size of the uncompressed content
+	 * @return the size of the uncompressed content
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * gets the offset of the local header of the entry in the jar
+	 * @return the offset of the local header
+	 */
+	public int getLocalHeaderOffset() {
+		return localHeaderOffset;
+	}
+
+	/**
+	 * gets the last modification date and time of the entry in MS-DOS format
+	 * @return the date in the high 16 bits and the time in the low 16 bits
+	 */
+	public int getDosTime() {
+		return dosTime;
+	}
+
+	/**
+	 * Test if the entry is a .class
+	 * @return True if the entry is a .class, False either
+	 */
+	public boolean isClass() {
+		return name.endsWith(".class");
+	}
+
+	/**
+	 * Test if the entry is a directory
+	 * @return True if the entry is a directory, False either
+	 */
+	public boolean isDirectory() {
+		return name.endsWith("/");
+	}
+}
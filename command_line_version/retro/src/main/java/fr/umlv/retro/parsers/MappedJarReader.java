@@ -0,0 +1,372 @@
+package fr.umlv.retro.parsers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Random-access jar reader, maps the jar in memory and parses its central directory once
+ * so the entries can be decoded by the worker threads of a pool
+ * @author LBillaut
+ *
+ */
+public class MappedJarReader implements Closeable {
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int CENTRAL_SIGNATURE = 0x02014b50;
+	private static final int LOCAL_SIGNATURE = 0x04034b50;
+	private static final int END_SIZE = 22;
+	private static final int CENTRAL_SIZE = 46;
+	private static final int LOCAL_SIZE = 30;
+	private static final int RANGE_SIZE = 64;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final List<JarRecord> records;
+
+	/**
+	 * Creates a new MappedJarReader
+	 * @param s the jar name
+	 * @throws ZipException if the jar is not a valid zip file or a ZIP64 archive
+	 * @throws IOException if the jar can't be open
+	 */
+	public MappedJarReader(String s) throws IOException {
+		channel = FileChannel.open(Paths.get(s), StandardOpenOption.READ);
+		try {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new ZipException(s + " is too large to be mapped");
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			records = readCentralDirectory(s);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Find the end of central directory record of the jar
+	 * @param s the jar name
+	 * @return the offset of the end of central directory record
+	 * @throws ZipException if the record can't be found
+	 */
+	private int findEnd(String s) throws ZipException {
+		int stop = Math.max(0, buffer.limit() - END_SIZE - 0xFFFF);
+		for (int i = buffer.limit() - END_SIZE; i >= stop; i--) {
+			if (buffer.getInt(i) == END_SIGNATURE) {
+				return i;
+			}
+		}
+		throw new ZipException(s + " is not a valid jar file");
+	}
+
+	/**
+	 * Read all the entries of the central directory
+	 * @param s the jar name
+	 * @return the entries of the jar, in the order of the central directory
+	 * @throws ZipException if the central directory is invalid or in ZIP64 format
+	 */
+	private List<JarRecord> readCentralDirectory(String s) throws ZipException {
+		int end = findEnd(s);
+		int count = Short.toUnsignedInt(buffer.getShort(end + 10));
+		long offset = Integer.toUnsignedLong(buffer.getInt(end + 16));
+		if (count == 0xFFFF || offset == 0xFFFFFFFFL) {
+			throw new ZipException(s + " is a ZIP64 archive");
+		}
+		if (offset > end) {
+			throw new ZipException(s + " has an invalid central directory");
+		}
+		List<JarRecord> list = new ArrayList<>(count);
+		int position = (int) offset;
+		for (int i = 0; i < count; i++) {
+			if (position + CENTRAL_SIZE > end || buffer.getInt(position) != CENTRAL_SIGNATURE) {
+				throw new ZipException(s + " has an invalid central directory");
+			}
+			int nameLength = Short.toUnsignedInt(buffer.getShort(position + 28));
+			int extraLength = Short.toUnsignedInt(buffer.getShort(position + 30));
+			int commentLength = Short.toUnsignedInt(buffer.getShort(position + 32));
+			if (position + CENTRAL_SIZE + nameLength > end) {
+				throw new ZipException(s + " has an invalid central directory");
+			}
+			int compressedSize = buffer.getInt(position + 20);
+			int size = buffer.getInt(position + 24);
+			int localHeaderOffset = buffer.getInt(position + 42);
+			if (compressedSize < 0 || size < 0 || localHeaderOffset < 0) {
+				throw new ZipException(s + " has an entry larger than 2 GiB");
+			}
+			byte[] name = new byte[nameLength];
+			buffer.get(position + CENTRAL_SIZE, name);
+			list.add(new JarRecord(new String(name, StandardCharsets.UTF_8),
+					Short.toUnsignedInt(buffer.getShort(position + 10)),
+					Integer.toUnsignedLong(buffer.getInt(position + 16)),
+					compressedSize, size, localHeaderOffset,
+					buffer.getShort(position + 14) << 16 | Short.toUnsignedInt(buffer.getShort(position + 12))));
+			position += CENTRAL_SIZE + nameLength + extraLength + commentLength;
+		}
+		return List.copyOf(list);
+	}
+
+	/**
+	 * Return all the entries of the jar, in the order of the central directory
+	 * @return the entries of the jar
+	 */
+	public List<JarRecord> getRecords() {
+		return records;
+	}
+
+	/**
+	 * Return the compressed content of an entry, without copying it
+	 * @param record the entry
+	 * @return a read-only view of the compressed content in the mapped jar
+	 * @throws ZipException if the local header of the entry is invalid
+	 */
+	public ByteBuffer rawData(JarRecord record) throws ZipException {
+		int header = record.getLocalHeaderOffset();
+		if (header < 0 || header + LOCAL_SIZE > buffer.limit() || buffer.getInt(header) != LOCAL_SIGNATURE) {
+			throw new ZipException("Invalid local header for " + record.getName());
+		}
+		int start = header + LOCAL_SIZE + Short.toUnsignedInt(buffer.getShort(header + 26))
+				+ Short.toUnsignedInt(buffer.getShort(header + 28));
+		if (record.getCompressedSize() < 0 || start + record.getCompressedSize() > buffer.limit()) {
+			throw new ZipException("Invalid size for " + record.getName());
+		}
+		return buffer.slice(start, record.getCompressedSize()).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Read the uncompressed content of an entry, its size and its CRC-32 must be the ones of the central directory
+	 * @param record the entry
+	 * @param inflater the inflater used if the entry is deflated
+	 * @return the uncompressed content of the entry
+	 * @throws ZipException if the entry is corrupted or use an unsupported compression method
+	 */
+	private byte[] read(JarRecord record, Inflater inflater) throws ZipException {
+		ByteBuffer data = rawData(record);
+		if (record.getSize() < 0) {
+			throw new ZipException("Invalid size for " + record.getName());
+		}
+		byte[] bytes = new byte[record.getSize()];
+		switch (record.getMethod()) {
+		case JarRecord.STORED:
+			if (record.getCompressedSize() != record.getSize()) {
+				throw new ZipException("Invalid size for " + record.getName());
+			}
+			data.get(bytes);
+			break;
+		case JarRecord.DEFLATED: inflate(record, inflater, data, bytes); break;
+		default: throw new ZipException("Unsupported compression method for " + record.getName());
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		if (crc.getValue() != record.getCrc()) {
+			throw new ZipException("Invalid CRC for " + record.getName());
+		}
+		return bytes;
+	}
+
+	/**
+	 * Inflate the compressed content of an entry, the deflated stream must end exactly at the size of the entry
+	 * @param record the entry
+	 * @param inflater the inflater to use
+	 * @param data the compressed content
+	 * @param bytes the array which receives the uncompressed content
+	 * @throws ZipException if the entry is corrupted or its size is not the one of the central directory
+	 */
+	private static void inflate(JarRecord record, Inflater inflater, ByteBuffer data, byte[] bytes) throws ZipException {
+		inflater.reset();
+		inflater.setInput(data);
+		boolean dummyByte = false;
+		byte[] extra = new byte[1];
+		try {
+			int length = 0;
+			while (!inflater.finished()) {
+				int read = length < bytes.length ? inflater.inflate(bytes, length, bytes.length - length) : inflater.inflate(extra);
+				if (read != 0 && length == bytes.length) {
+					throw new ZipException("Invalid size for " + record.getName());
+				}
+				if (read == 0 && !inflater.finished()) {
+					if (!inflater.needsInput() || dummyByte) {
+						throw new ZipException("Truncated entry " + record.getName());
+					}
+					inflater.setInput(new byte[1]);
+					dummyByte = true;
+				}
+				length += read;
+			}
+			if (length != bytes.length) {
+				throw new ZipException("Invalid size for " + record.getName());
+			}
+		} catch (DataFormatException e) {
+			throw new ZipException("Invalid entry " + record.getName() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Read the uncompressed content of an entry
+	 * @param record the entry
+	 * @return the uncompressed content of the entry
+	 * @throws ZipException if the entry is corrupted or use an unsupported compression method
+	 */
+	public byte[] read(JarRecord record) throws ZipException {
+		Inflater inflater = new Inflater(true);
+		try {
+			return read(record, inflater);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Read the .class of a range of entries with a single inflater
+	 * @param range the entries to read
+	 * @return the uncompressed contents of the .class, null for the other entries
+	 * @throws ZipException if an entry is corrupted
+	 */
+	private List<byte[]> readRange(List<JarRecord> range) throws ZipException {
+		Inflater inflater = new Inflater(true);
+		try {
+			List<byte[]> contents = new ArrayList<>(range.size());
+			for (JarRecord record : range) {
+				contents.add(record.isClass() && !record.isDirectory() ? read(record, inflater) : null);
+			}
+			return contents;
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Give the contents of the entries of a range to the consumer
+	 * @param range the entries of the range
+	 * @param task the task which reads the range
+	 * @param consumer the consumer of the entries
+	 * @throws IOException if an entry can't be read or processed
+	 */
+	private static void acceptRange(List<JarRecord> range, Future<List<byte[]>> task, JarEntryConsumer consumer) throws IOException {
+		List<byte[]> contents;
+		try {
+			contents = task.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading the jar", e);
+		}
+		for (int i = 0; i < range.size(); i++) {
+			consumer.accept(range.get(i), contents.get(i));
+		}
+	}
+
+	/**
+	 * Read all the .class of the jar on the worker threads of the pool and give them to the consumer,
+	 * in the order of the central directory and on the calling thread
+	 * @param pool the pool which inflates the entries
+	 * @param buffer the number of uncompressed bytes which can be inflated ahead of the consumer
+	 * @param consumer the consumer of the classes
+	 * @throws IOException if an entry can't be read or processed
+	 */
+	public void readClasses(ForkJoinPool pool, int buffer, ClassConsumer consumer) throws IOException {
+		Objects.requireNonNull(consumer);
+		readEntries(pool, buffer, (record, bytes) -> {
+			if (bytes != null) {
+				consumer.accept(record.getName(), bytes);
+			}
+		});
+	}
+
+	/**
+	 * Gets the number of bytes of the .class of a range once inflated
+	 * @param range the entries of the range
+	 * @return the uncompressed size of the .class of the range
+	 */
+	private static long classBytes(List<JarRecord> range) {
+		long bytes = 0;
+		for (JarRecord record : range) {
+			if (record.isClass() && !record.isDirectory()) {
+				bytes += record.getSize();
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Read all the entries of the jar and give them to the consumer, in the order of the central directory
+	 * and on the calling thread. The .class are inflated on the worker threads of the pool, the other entries
+	 * are given without their content. The calling thread may itself be a worker of the pool.
+	 * The ranges are inflated ahead of the consumer as long as their uncompressed size fits in the buffer,
+	 * the sizes are known from the central directory, so a few large classes can't fill the memory.
+	 * A range is also cut when its classes reach a quarter of the buffer.
+	 * @param pool the pool which inflates the entries
+	 * @param buffer the number of uncompressed bytes which can be inflated ahead of the consumer
+	 * @param consumer the consumer of the entries
+	 * @throws IOException if an entry can't be read or processed
+	 */
+	public void readEntries(ForkJoinPool pool, int buffer, JarEntryConsumer consumer) throws IOException {
+		Objects.requireNonNull(pool);
+		Objects.requireNonNull(consumer);
+		if (buffer < 1) {
+			throw new IllegalArgumentException("The buffer must be greater than 0");
+		}
+		ArrayDeque<List<JarRecord>> ranges = new ArrayDeque<>();
+		ArrayDeque<Future<List<byte[]>>> tasks = new ArrayDeque<>();
+		long pending = 0;
+		try {
+			List<JarRecord> range = new ArrayList<>(RANGE_SIZE);
+			long rangeBytes = 0;
+			for (JarRecord record : records) {
+				range.add(record);
+				rangeBytes += record.isClass() && !record.isDirectory() ? record.getSize() : 0;
+				if (range.size() == RANGE_SIZE || rangeBytes >= buffer / 4) {
+					List<JarRecord> submitted = range;
+					ranges.add(submitted);
+					tasks.add(pool.submit(() -> readRange(submitted)));
+					pending += rangeBytes;
+					range = new ArrayList<>(RANGE_SIZE);
+					rangeBytes = 0;
+				}
+				while (pending > buffer && tasks.size() > 1) {
+					pending -= classBytes(ranges.peek());
+					acceptRange(ranges.poll(), tasks.poll(), consumer);
+				}
+			}
+			if (!range.isEmpty()) {
+				List<JarRecord> submitted = range;
+				ranges.add(submitted);
+				tasks.add(pool.submit(() -> readRange(submitted)));
+			}
+			while (!tasks.isEmpty()) {
+				acceptRange(ranges.poll(), tasks.poll(), consumer);
+			}
+		} finally {
+			tasks.forEach(task -> task.cancel(false));
+		}
+	}
+
+	/**
+	 * Close the jar file
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
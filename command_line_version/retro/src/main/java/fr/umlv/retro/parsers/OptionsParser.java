@@ -14,8 +14,16 @@ public class OptionsParser {
 	private final HashMap<String, Integer> optionsAvailables = new HashMap<String, Integer>(); 
 	private final ArrayList<String> features = new ArrayList<String>();
 	private int target;
+	private int level = -1;
+	private int ioThreads;
+	private int buffer = 16 << 20;
+	private String cacheDirectory;
 	private boolean dontCheck = false;
-	private String file;
+	private boolean help;
+	private boolean info;
+	private boolean targetAsk;
+	private boolean count;
+	private final ArrayList<String> files = new ArrayList<String>();
 	
 	/**
 	 * Create a parser
@@ -25,6 +33,13 @@ public class OptionsParser {
 		optionsAvailables.put("-info", 0);
 		optionsAvailables.put("-target", 0);
 		optionsAvailables.put("-features", 0);
+		optionsAvailables.put("-level", 0);
+		optionsAvailables.put("-cache", 0);
+		optionsAvailables.put("-watch", 0);
+		optionsAvailables.put("-stream", 0);
+		optionsAvailables.put("-count", 0);
+		optionsAvailables.put("-io", 0);
+		optionsAvailables.put("-buffer", 0);
 	}
 	
 	/**
@@ -56,7 +71,7 @@ public class OptionsParser {
 		if(!args[i].equals("-features")) {
 			return;
 		}
-		if(i >= args.length - 2 || optionsAvailables.containsKey(args[i + 1])) {
+		if(i >= args.length - 1 || optionsAvailables.containsKey(args[i + 1])) {
 			throw new IllegalArgumentException("-features need features write like: feature1,feature2,feature3");
 		}
 		for (String s : args[i + 1].split(",")) {
@@ -74,13 +89,89 @@ public class OptionsParser {
 		if(!args[i].equals("-target")) {
 			return;
 		}
-		if(i >= args.length - 2 || optionsAvailables.containsKey(args[i + 1])) {
+		if(i >= args.length - 1 || optionsAvailables.containsKey(args[i + 1])) {
 			throw new IllegalArgumentException("-target need a target");
 		}
 		target = Integer.parseInt(args[i + 1]);
 		dontCheck = true;
 	}
 	
+	/**
+	 * Check if the option -level is correct
+	 * @param i actual index
+	 * @param args list of given arguments
+	 */
+	private void checkLevel(int i, String[] args) throws IllegalArgumentException {
+		if(!args[i].equals("-level")) {
+			return;
+		}
+		if(i >= args.length - 1 || optionsAvailables.containsKey(args[i + 1])) {
+			throw new IllegalArgumentException("-level need a compression level between 0 (stored) and 9");
+		}
+		int level = Integer.parseInt(args[i + 1]);
+		if(level < 0 || level > 9) {
+			throw new IllegalArgumentException("-level need a compression level between 0 (stored) and 9");
+		}
+		this.level = level;
+		dontCheck = true;
+	}
+
+	/**
+	 * Check if the option -cache is correct
+	 * @param i actual index
+	 * @param args list of given arguments
+	 */
+	private void checkCache(int i, String[] args) throws IllegalArgumentException {
+		if(!args[i].equals("-cache")) {
+			return;
+		}
+		if(i >= args.length - 1 || optionsAvailables.containsKey(args[i + 1])) {
+			throw new IllegalArgumentException("-cache need a directory");
+		}
+		cacheDirectory = args[i + 1];
+		dontCheck = true;
+	}
+
+	/**
+	 * Check if the option -io is correct
+	 * @param i actual index
+	 * @param args list of given arguments
+	 */
+	private void checkIo(int i, String[] args) throws IllegalArgumentException {
+		if(!args[i].equals("-io")) {
+			return;
+		}
+		if(i >= args.length - 1 || optionsAvailables.containsKey(args[i + 1])) {
+			throw new IllegalArgumentException("-io need a number of threads greater than 0");
+		}
+		int threads = Integer.parseInt(args[i + 1]);
+		if(threads < 1) {
+			throw new IllegalArgumentException("-io need a number of threads greater than 0");
+		}
+		ioThreads = threads;
+		dontCheck = true;
+	}
+
+	/**
+	 * Check if the option -buffer is correct
+	 * @param i actual index
+	 * @param args list of given arguments
+	 */
+	private void checkBuffer(int i, String[] args) throws IllegalArgumentException {
+		if(!args[i].equals("-buffer")) {
+			return;
+		}
+		if(i >= args.length - 1 || optionsAvailables.containsKey(args[i + 1])) {
+			throw new IllegalArgumentException("-buffer need a number of megabytes between 1 and 1024");
+		}
+		int megabytes = Integer.parseInt(args[i + 1]);
+		if(megabytes < 1 || megabytes > 1024) {
+			throw new IllegalArgumentException("-buffer need a number of megabytes between 1 and 1024");
+		}
+		buffer = megabytes << 20;
+		dontCheck = true;
+	}
+
 	/**
 	 * Check validity of givens options
 	 * @param i actual index
@@ -89,29 +180,46 @@ public class OptionsParser {
 	private void checkForValidOptions(int i, String[] args) throws IllegalArgumentException {
 		checkFeatures(i, args);
 		checkTarget(i, args);
+		checkLevel(i, args);
+		checkCache(i, args);
+		checkIo(i, args);
+		checkBuffer(i, args);
 		checkIfOptionHaveDash(args[i]);
 		checkIfOptionExist(args[i]);
 		if(optionsAvailables.get(args[i]) > 0) {
 			throw new IllegalArgumentException("Option " + args[i] + " already used");
 		}
 		optionsAvailables.put(args[i], 1);
+		switch (args[i]) {
+		case "-help": help = true; break;
+		case "-info": info = true; break;
+		case "-target": targetAsk = true; break;
+		case "-count": count = true; break;
+		default: break;
+		}
 	}
 	
 
 	
 	/**
-	 * Check givens options
+	 * Check givens options, the first argument which doesn't start with a dash and all the following ones are the files
 	 * @param args list of given arguments
 	 */
 	public void checkOptions(String[] args) {
-		for(int i = 0; i < args.length - 1; i++) {
+		int i = 0;
+		for(; i < args.length; i++) {
 			if(dontCheck) {
 				dontCheck = false;
 				continue;
 			}
+			if(!args[i].startsWith("-")) {
+				break;
+			}
 			checkForValidOptions(i, args);
 		}
-		file = args[args.length - 1];
+		for(; i < args.length; i++) {
+			files.add(args[i]);
+		}
 	}
 	
 	/**
@@ -122,6 +230,71 @@ public class OptionsParser {
 		return target;
 	}
 	
+	/**
+	 * Tell if -help is asked
+	 * @return True if -help is asked, False either
+	 */
+	public boolean helpAsk() {
+		return help;
+	}
+
+	/**
+	 * Tell if -info is asked
+	 * @return True if -info is asked, False either
+	 */
+	public boolean infoAsk() {
+		return info;
+	}
+
+	/**
+	 * Tell if -target is asked
+	 * @return True if -target is asked, False either
+	 */
+	public boolean targetAsk() {
+		return targetAsk;
+	}
+
+	/**
+	 * Tell if -count is asked
+	 * @return True if -count is asked, False either
+	 */
+	public boolean countAsk() {
+		return count;
+	}
+
+	/**
+	 * Return the compression level of the written jars
+	 * @return the compression level, 0 for stored entries or -1 for the default level
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * Return the number of threads which read and write the class files
+	 * @return the number of I/O threads, or 0 if the class files are read and written by the workers
+	 */
+	public int getIoThreads() {
+		return ioThreads;
+	}
+
+	/**
+	 * Return the number of bytes of the classes which can wait between two stages of the processing,
+	 * the reading, the detection and the writing
+	 * @return the number of bytes of the buffer of each stage, 16 megabytes by default
+	 */
+	public int getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Return the directory of the cache
+	 * @return the directory of the cache, or null if the cache is not used
+	 */
+	public String getCacheDirectory() {
+		return cacheDirectory;
+	}
+
 	/**
 	 * Return the features ask by the user
 	 * @return the features ask by the user
@@ -144,7 +317,11 @@ public class OptionsParser {
 		return options;
 	}
 	
-	public String getFile() {
-		return file;
+	/**
+	 * Return the files given by the user, jars, directories or classes
+	 * @return the files given by the user
+	 */
+	public List<String> getFiles() {
+		return files;
 	}
 }
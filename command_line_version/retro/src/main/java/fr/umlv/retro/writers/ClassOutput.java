@@ -0,0 +1,37 @@
+package fr.umlv.retro.writers;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of the retro-ified classes
+ * @author PJBesnard
+ *
+ */
+public interface ClassOutput extends Closeable {
+
+	/**
+	 * Write a rewritten class
+	 * @param className the name of the class file
+	 * @param bytes the new content of the class file
+	 * @throws IOException if the class can't be written
+	 */
+	public void write(String className, byte[] bytes) throws IOException;
+
+	/**
+	 * Write a class which is unchanged by the retro-ification
+	 * @param className the name of the class file
+	 * @param bytes the original content of the class file
+	 * @throws IOException if the class can't be written
+	 */
+	public default void copy(String className, byte[] bytes) throws IOException {
+		write(className, bytes);
+	}
+
+	/**
+	 * Close the output, nothing to do by default
+	 */
+	@Override
+	public default void close() throws IOException {
+	}
+}
@@ -0,0 +1,140 @@
+package fr.umlv.retro.writers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.Future;
+
+import fr.umlv.retro.parsers.IoPool;
+
+/**
+ * Writes the retro-ified classes as loose files under a directory. The files are written by a writer
+ * stage, on the threads of an IoPool, so a slow disk doesn't stop the detection of the next classes as
+ * long as the bytes waiting to be written fit in the buffer. Without a writer stage, each class is written
+ * before write returns, so a failure is reported for the class itself. The files get a fixed date and, when the file
+ * system has them, fixed permissions, so the same classes always give the same tree.
+ * @author PJBesnard
+ *
+ */
+public class DirectoryOutput implements ClassOutput {
+	private static final FileTime FIXED_TIME = FileTime.fromMillis(315532800000L);
+
+	private final String directory;
+	private final IoPool io;
+	private final boolean ownIo;
+	private final int buffer;
+	private final ArrayDeque<Future<Void>> pending = new ArrayDeque<>();
+	private final ArrayDeque<Integer> sizes = new ArrayDeque<>();
+	private long pendingBytes;
+
+	/**
+	 * Creates a new DirectoryOutput
+	 * @param directory the directory which receives the classes
+	 * @param io the pool which writes the classes, or null to write them on a writer thread of the output
+	 * @param buffer the number of bytes which can wait to be written
+	 */
+	public DirectoryOutput(String directory, IoPool io, int buffer) {
+		if (buffer < 1) {
+			throw new IllegalArgumentException("The buffer must be greater than 0");
+		}
+		this.directory = Objects.requireNonNull(directory);
+		this.ownIo = io == null;
+		this.io = ownIo ? new IoPool(1) : io;
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Creates a new DirectoryOutput which writes the classes on the calling thread
+	 * @param directory the directory which receives the classes
+	 */
+	public DirectoryOutput(String directory) {
+		this.directory = Objects.requireNonNull(directory);
+		this.ownIo = false;
+		this.io = null;
+		this.buffer = 0;
+	}
+
+	/**
+	 * Write a class file under the directory, creating its package directories
+	 * @param className the name of the class file
+	 * @param bytes the content of the class file
+	 * @throws IOException if the class can't be written
+	 */
+	private void writeFile(String className, byte[] bytes) throws IOException {
+		Path target = Paths.get(directory, className);
+		if (target.getParent() != null) {
+			Files.createDirectories(target.getParent());
+		}
+		Files.write(target, bytes);
+		normalize(target);
+	}
+
+	/**
+	 * Give a written file the fixed date and, when the file system has them, the fixed permissions
+	 * @param file the written file
+	 * @throws IOException if the attributes of the file can't be changed
+	 */
+	static void normalize(Path file) throws IOException {
+		Files.setLastModifiedTime(file, FIXED_TIME);
+		PosixFileAttributeView posix = Files.getFileAttributeView(file, PosixFileAttributeView.class);
+		if (posix != null) {
+			posix.setPermissions(PosixFilePermissions.fromString("rw-r--r--"));
+		}
+	}
+
+	/**
+	 * Give the class to the writer stage, the caller waits for the oldest writes while the bytes waiting
+	 * to be written don't fit in the buffer. A failure is reported by a following write or by close.
+	 * Without a writer stage, the class is written immediately.
+	 */
+	@Override
+	public void write(String className, byte[] bytes) throws IOException {
+		Objects.requireNonNull(className);
+		Objects.requireNonNull(bytes);
+		if (io == null) {
+			writeFile(className, bytes);
+			return;
+		}
+		pending.add(io.submit(() -> {
+			writeFile(className, bytes);
+			return null;
+		}));
+		sizes.add(bytes.length);
+		pendingBytes += bytes.length;
+		while (pendingBytes > buffer && pending.size() > 1) {
+			pendingBytes -= sizes.poll();
+			IoPool.await(pending.poll());
+		}
+	}
+
+	/**
+	 * Wait for the writes which are not done, the first failure is reported once all of them are done
+	 */
+	@Override
+	public void close() throws IOException {
+		IOException failure = null;
+		sizes.clear();
+		pendingBytes = 0;
+		if (ownIo) {
+			io.close();
+		}
+		while (!pending.isEmpty()) {
+			try {
+				IoPool.await(pending.poll());
+			} catch (IOException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
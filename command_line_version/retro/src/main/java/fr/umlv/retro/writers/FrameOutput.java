@@ -0,0 +1,114 @@
+package fr.umlv.retro.writers;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import fr.umlv.retro.features.CodeFeature;
+
+/**
+ * Writes the retro-ified classes and their features as frames on a stream. All ints are big-endian and all
+ * strings are an int length followed by UTF-8 bytes. For each input class, a frame is made of:
+ * the length of the class followed by its bytes, or -1 followed by a message if no class is written;
+ * then the number of classes generated for it, like the classes which replace its lambdas below Java 8,
+ * followed, for each generated class, by its name, the length of the class and its bytes;
+ * then the number of features followed, for each feature, by its name, the version of the class and its log.
+ * @author PJBesnard
+ *
+ */
+public class FrameOutput implements ClassOutput {
+	private final DataOutputStream out;
+	private byte[] pending;
+	private final List<String> generatedNames = new ArrayList<>();
+	private final List<byte[]> generated = new ArrayList<>();
+
+	/**
+	 * Creates a new FrameOutput
+	 * @param output the stream which receives the frames
+	 */
+	public FrameOutput(OutputStream output) {
+		this.out = new DataOutputStream(new BufferedOutputStream(Objects.requireNonNull(output)));
+	}
+
+	/**
+	 * Keep the rewritten class until the end of its frame, the first class written for a frame is the class
+	 * of the frame, the next ones are the classes generated for it
+	 */
+	@Override
+	public void write(String className, byte[] bytes) {
+		Objects.requireNonNull(className);
+		Objects.requireNonNull(bytes);
+		if (pending == null) {
+			pending = bytes;
+			return;
+		}
+		generatedNames.add(className);
+		generated.add(bytes);
+	}
+
+	/**
+	 * Forget the classes written for the current frame, when the class has failed after they were written,
+	 * so the frame has no class
+	 */
+	public void discardClasses() {
+		pending = null;
+		generatedNames.clear();
+		generated.clear();
+	}
+
+	/**
+	 * Write a string as its length followed by its UTF-8 bytes
+	 * @param s the string to write
+	 * @throws IOException if the stream can't be written
+	 */
+	private void writeString(String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Write the frame of the current class and flush it, so the reader of the stream can use it immediately
+	 * @param message the reason why no class is written, ignored if a class is written
+	 * @param features the features detected in the class
+	 * @throws IOException if the stream can't be written
+	 */
+	public void endFrame(String message, List<CodeFeature> features) throws IOException {
+		if (pending == null) {
+			out.writeInt(-1);
+			writeString(Objects.requireNonNull(message));
+		} else {
+			out.writeInt(pending.length);
+			out.write(pending);
+			pending = null;
+		}
+		out.writeInt(generated.size());
+		for (int i = 0; i < generated.size(); i++) {
+			writeString(generatedNames.get(i));
+			out.writeInt(generated.get(i).length);
+			out.write(generated.get(i));
+		}
+		generatedNames.clear();
+		generated.clear();
+		out.writeInt(features.size());
+		for (CodeFeature feature : features) {
+			writeString(feature.getName());
+			out.writeInt(feature.getClassVersion());
+			writeString(feature.getLog());
+		}
+		out.flush();
+	}
+
+	/**
+	 * Flush the stream, the stream itself is not closed
+	 */
+	@Override
+	public void close() throws IOException {
+		out.flush();
+	}
+}
@@ -0,0 +1,496 @@
+package fr.umlv.retro.writers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+import fr.umlv.retro.parsers.JarRecord;
+import fr.umlv.retro.parsers.MappedJarReader;
+
+/**
+ * Writes the retro-ified classes in a jar. The entries which are not rewritten are copied
+ * from the source jar as raw compressed bytes, only the rewritten classes are compressed again.
+ * The compression is done by the workers of a shared pool while a single sequencer thread appends the
+ * compressed entries, in the order they were given, and the central directory. The entries waiting for
+ * the sequencer are bounded by their size, not by their number, so a few large classes can't fill
+ * the memory and a slow disk only stops the producers once the buffer is full.
+ * The jar only depends on the source jar and the options, the entries keep the order and the dates of the
+ * source jar, so the same source always gives the same bytes.
+ * The jar is written in a temporary file next to it, which only replaces the jar once it is finished,
+ * so a failed retro-ification never leaves a truncated jar.
+ * @author PJBesnard
+ *
+ */
+public class JarOutput implements ClassOutput {
+	private static final int LOCAL_SIGNATURE = 0x04034b50;
+	private static final int CENTRAL_SIGNATURE = 0x02014b50;
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int UTF8_FLAG = 0x0800;
+	private static final int BUFFER_SIZE = 1 << 17;
+	private static final Queued END_OF_JAR = new Queued(CompletableFuture.completedFuture(null), 0);
+	private static final int FIXED_DOS_TIME = dosTime(LocalDateTime.of(1980, 1, 1, 0, 0));
+
+	private final Path path;
+	private final Path temporary;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	private final MappedJarReader source;
+	private final Map<String, JarRecord> sourceRecords = new HashMap<>();
+	private final List<Entry> entries = new ArrayList<>();
+	private final int level;
+	private final ForkJoinPool compressors;
+	private final BlockingQueue<Queued> blocks = new LinkedBlockingQueue<>();
+	private final Semaphore buffered;
+	private final int bufferSize;
+	private final Thread sequencer;
+	private volatile IOException failure;
+	private volatile boolean aborted;
+	private boolean finished;
+	private long offset;
+
+	/**
+	 * Stocks an entry ready to be appended to the jar
+	 */
+	private static class Block {
+		private final String name;
+		private final int method;
+		private final int dosTime;
+		private final long crc;
+		private final int size;
+		private final ByteBuffer data;
+
+		private Block(String name, int method, int dosTime, long crc, int size, ByteBuffer data) {
+			this.name = name;
+			this.method = method;
+			this.dosTime = dosTime;
+			this.crc = crc;
+			this.size = size;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * Stocks a block waiting for the sequencer, with the number of bytes it holds in the buffer
+	 */
+	private static class Queued {
+		private final Future<Block> block;
+		private final int weight;
+
+		private Queued(Future<Block> block, int weight) {
+			this.block = block;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * Stocks an entry already written, to be added in the central directory
+	 */
+	private static class Entry {
+		private final byte[] name;
+		private final int method;
+		private final int dosTime;
+		private final long crc;
+		private final int compressedSize;
+		private final int size;
+		private final long offset;
+
+		private Entry(byte[] name, int method, int dosTime, long crc, int compressedSize, int size, long offset) {
+			this.name = name;
+			this.method = method;
+			this.dosTime = dosTime;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.offset = offset;
+		}
+	}
+
+	/**
+	 * Creates a new JarOutput
+	 * @param jarName the name of the jar to create
+	 * @param source the jar which is retro-ified
+	 * @param level the compression level of the rewritten classes, from 0 (stored) to 9, or -1 for the default level
+	 * @param compressors the pool which compresses the rewritten classes, it is not shut down by the JarOutput
+	 * @param buffer the number of bytes of the entries which can wait for the sequencer
+	 * @throws IOException if the jar can't be created
+	 */
+	public JarOutput(String jarName, MappedJarReader source, int level, ForkJoinPool compressors, int buffer) throws IOException {
+		this.source = Objects.requireNonNull(source);
+		this.compressors = Objects.requireNonNull(compressors);
+		if (level < -1 || level > 9) {
+			throw new IllegalArgumentException("Compression level " + level + " not supported");
+		}
+		if (buffer < 1) {
+			throw new IllegalArgumentException("The buffer must be greater than 0");
+		}
+		this.level = level;
+		this.bufferSize = buffer;
+		this.buffered = new Semaphore(buffer);
+		source.getRecords().forEach(record -> sourceRecords.put(record.getName(), record));
+		path = Paths.get(jarName).toAbsolutePath();
+		Files.createDirectories(path.getParent());
+		temporary = Files.createTempFile(path.getParent(), "." + path.getFileName(), ".tmp");
+		try {
+			channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		} catch (IOException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		sequencer = new Thread(this::sequence, "retro-jar-sequencer");
+		sequencer.setDaemon(true);
+		sequencer.start();
+	}
+
+	/**
+	 * Convert a date in the MS-DOS format used by jar files
+	 * @param date the date to convert
+	 * @return the date in the high 16 bits and the time in the low 16 bits
+	 */
+	private static int dosTime(LocalDateTime date) {
+		return (date.getYear() - 1980) << 25 | date.getMonthValue() << 21 | date.getDayOfMonth() << 16
+				| date.getHour() << 11 | date.getMinute() << 5 | date.getSecond() >> 1;
+	}
+
+	/**
+	 * Return the date of an entry, the date of the entry of the same name in the source jar or a fixed date,
+	 * never the current date
+	 * @param className the name of the entry
+	 * @return the date in the MS-DOS format
+	 */
+	private int entryTime(String className) {
+		JarRecord record = sourceRecords.get(className);
+		return record == null ? FIXED_DOS_TIME : record.getDosTime();
+	}
+
+	/**
+	 * Append the blocks in the order of the queue until the end of the jar, then the central directory.
+	 * After a failure or once the jar is aborted, the blocks are still taken so the producers are never blocked.
+	 * A runtime exception is a failure like the others, it doesn't stop the sequencer.
+	 */
+	private void sequence() {
+		try {
+			Queued queued;
+			while ((queued = blocks.take()) != END_OF_JAR) {
+				if (failure == null && !aborted) {
+					append(queued.block);
+				}
+				buffered.release(queued.weight);
+			}
+			if (failure == null && !aborted) {
+				writeCentralDirectory();
+			}
+		} catch (IOException e) {
+			failure = e;
+		} catch (RuntimeException e) {
+			failure = new IOException("Can't write the jar", e);
+		} catch (InterruptedException e) {
+			failure = new IOException("Interrupted while writing the jar", e);
+		}
+	}
+
+	/**
+	 * Wait for a block to be compressed and append it to the jar
+	 * @param block the block to append
+	 * @throws InterruptedException if the sequencer is interrupted
+	 */
+	private void append(Future<Block> block) throws InterruptedException {
+		try {
+			addEntry(block.get());
+		} catch (ExecutionException e) {
+			failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		} catch (IOException e) {
+			failure = e;
+		} catch (RuntimeException e) {
+			failure = new IOException("Can't write the jar", e);
+		}
+	}
+
+	/**
+	 * Put a block in the queue of the sequencer once its bytes fit in the buffer, a block larger than the
+	 * buffer waits for the whole buffer. The caller may be a worker of the pool, so the wait is declared
+	 * to the pool which can start another worker to compress the queued blocks.
+	 * @param queued the block to put
+	 * @throws InterruptedException if the caller is interrupted while waiting
+	 */
+	private void put(Queued queued) throws InterruptedException {
+		ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+			private boolean done;
+
+			@Override
+			public boolean block() throws InterruptedException {
+				if (!done) {
+					buffered.acquire(queued.weight);
+					done = true;
+				}
+				return true;
+			}
+
+			@Override
+			public boolean isReleasable() {
+				return done || (done = buffered.tryAcquire(queued.weight));
+			}
+		});
+		blocks.add(queued);
+	}
+
+	/**
+	 * Give a block to the sequencer
+	 * @param block the block to append
+	 * @param size the number of bytes held by the block until it is appended
+	 * @throws IOException if the jar can't be written anymore
+	 */
+	private void submit(Future<Block> block, int size) throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+		try {
+			put(new Queued(block, Math.min(size, bufferSize)));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing the jar", e);
+		}
+	}
+
+	/**
+	 * Write the buffer in the jar file
+	 * @throws IOException if the jar can't be written
+	 */
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Make sure the buffer has enough space
+	 * @param length the number of bytes to put in the buffer
+	 * @throws IOException if the jar can't be written
+	 */
+	private void ensureRemaining(int length) throws IOException {
+		if (buffer.remaining() < length) {
+			flush();
+		}
+	}
+
+	/**
+	 * Write some data in the jar, directly if it doesn't fit in the buffer
+	 * @param data the data to write
+	 * @throws IOException if the jar can't be written
+	 */
+	private void writeData(ByteBuffer data) throws IOException {
+		if (data.remaining() <= buffer.remaining()) {
+			buffer.put(data);
+			return;
+		}
+		flush();
+		while (data.hasRemaining()) {
+			channel.write(data);
+		}
+	}
+
+	/**
+	 * Write a local header and the data of an entry, only called by the sequencer
+	 * @param block the entry to write
+	 * @throws IOException if the jar can't be written
+	 */
+	private void addEntry(Block block) throws IOException {
+		if (entries.size() == 0xFFFF || offset > 0xFFFFFFFFL) {
+			throw new ZipException("Too many entries, ZIP64 jars are not supported");
+		}
+		byte[] name = block.name.getBytes(StandardCharsets.UTF_8);
+		if (name.length > 0xFFFF) {
+			throw new ZipException("Entry name too long: " + block.name.substring(0, 64) + "...");
+		}
+		int compressedSize = block.data.remaining();
+		entries.add(new Entry(name, block.method, block.dosTime, block.crc, compressedSize, block.size, offset));
+		ensureRemaining(30 + name.length);
+		buffer.putInt(LOCAL_SIGNATURE).putShort(versionNeeded(block.method)).putShort((short) UTF8_FLAG)
+			.putShort((short) block.method).putInt(block.dosTime).putInt((int) block.crc).putInt(compressedSize)
+			.putInt(block.size).putShort((short) name.length).putShort((short) 0).put(name);
+		writeData(block.data);
+		offset += 30 + name.length + compressedSize;
+	}
+
+	/**
+	 * Return the version needed to extract an entry
+	 * @param method the compression method of the entry
+	 * @return the version needed to extract the entry
+	 */
+	private static short versionNeeded(int method) {
+		return (short) (method == JarRecord.DEFLATED ? 20 : 10);
+	}
+
+	/**
+	 * Write the central directory, only called by the sequencer
+	 * @throws IOException if the jar can't be written
+	 */
+	private void writeCentralDirectory() throws IOException {
+		long start = offset;
+		for (Entry entry : entries) {
+			ensureRemaining(46 + entry.name.length);
+			buffer.putInt(CENTRAL_SIGNATURE).putShort((short) 20).putShort(versionNeeded(entry.method))
+				.putShort((short) UTF8_FLAG).putShort((short) entry.method).putInt(entry.dosTime)
+				.putInt((int) entry.crc).putInt(entry.compressedSize).putInt(entry.size)
+				.putShort((short) entry.name.length).putShort((short) 0).putShort((short) 0)
+				.putShort((short) 0).putShort((short) 0).putInt(0).putInt((int) entry.offset).put(entry.name);
+			offset += 46 + entry.name.length;
+		}
+		if (offset > 0xFFFFFFFFL) {
+			throw new ZipException("Jar too large, ZIP64 jars are not supported");
+		}
+		ensureRemaining(22);
+		buffer.putInt(END_SIGNATURE).putShort((short) 0).putShort((short) 0)
+			.putShort((short) entries.size()).putShort((short) entries.size())
+			.putInt((int) (offset - start)).putInt((int) start).putShort((short) 0);
+		flush();
+	}
+
+	/**
+	 * Compress a rewritten class, called by the compression workers
+	 * @param className the name of the class file
+	 * @param bytes the content of the class file
+	 * @return the compressed class
+	 */
+	private Block compress(String className, byte[] bytes) {
+		int dosTime = entryTime(className);
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		if (level == Deflater.NO_COMPRESSION) {
+			return new Block(className, JarRecord.STORED, dosTime, crc.getValue(), bytes.length, ByteBuffer.wrap(bytes));
+		}
+		Deflater deflater = new Deflater(level, true);
+		try {
+			deflater.setInput(bytes);
+			deflater.finish();
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2 + 64);
+			byte[] chunk = new byte[8192];
+			while (!deflater.finished()) {
+				compressed.write(chunk, 0, deflater.deflate(chunk));
+			}
+			return new Block(className, JarRecord.DEFLATED, dosTime, crc.getValue(), bytes.length,
+					ByteBuffer.wrap(compressed.toByteArray()));
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Copy an entry of the source jar as raw compressed bytes
+	 * @param record the entry of the source jar
+	 * @throws IOException if the entry can't be copied
+	 */
+	public void copy(JarRecord record) throws IOException {
+		submit(CompletableFuture.completedFuture(new Block(record.getName(), record.getMethod(),
+				record.getDosTime(), record.getCrc(), record.getSize(), source.rawData(record))), record.getCompressedSize());
+	}
+
+	/**
+	 * Copy the class from the source jar without inflating and deflating it
+	 */
+	@Override
+	public void copy(String className, byte[] bytes) throws IOException {
+		JarRecord record = sourceRecords.get(className);
+		if (record == null) {
+			write(className, bytes);
+			return;
+		}
+		copy(record);
+	}
+
+	/**
+	 * Compress the rewritten class on a worker and append it to the jar
+	 */
+	@Override
+	public void write(String className, byte[] bytes) throws IOException {
+		Objects.requireNonNull(className);
+		Objects.requireNonNull(bytes);
+		submit(compressors.submit(() -> compress(className, bytes)), bytes.length);
+	}
+
+	/**
+	 * Wait for the sequencer to take the end of the jar and close the temporary file.
+	 * The wait is declared to the pool so the blocks still queued in it can be compressed.
+	 * @throws IOException if the wait is interrupted
+	 */
+	private void stop() throws IOException {
+		try {
+			put(END_OF_JAR);
+			ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+				@Override
+				public boolean block() throws InterruptedException {
+					sequencer.join();
+					return true;
+				}
+
+				@Override
+				public boolean isReleasable() {
+					return !sequencer.isAlive();
+				}
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing the jar", e);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Wait for the sequencer to append the last entries and the central directory, and move the finished
+	 * jar in place of the jar of the same name. The jar then gets the same fixed date and permissions as the
+	 * classes written by a DirectoryOutput.
+	 * @throws IOException if the jar can't be written, it is then deleted by close
+	 */
+	public void finish() throws IOException {
+		stop();
+		if (failure != null) {
+			throw failure;
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		finished = true;
+		DirectoryOutput.normalize(path);
+	}
+
+	/**
+	 * Delete the temporary file if the jar was not finished, when the retro-ification has failed,
+	 * the jar of the same name is then left as it was
+	 */
+	@Override
+	public void close() throws IOException {
+		if (finished) {
+			return;
+		}
+		aborted = true;
+		try {
+			stop();
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+}
@@ -3,6 +3,8 @@ module retro {
 	exports fr.umlv.retro.parsers;
 	exports fr.umlv.retro.features;
 	exports fr.umlv.retro.classvisitors.updaters;
+	exports fr.umlv.retro.writers;
+	exports fr.umlv.retro.cache;
 	exports fr.umlv.retro;
 
 	requires transitive org.objectweb.asm;
@@ -0,0 +1,207 @@
+package fr.umlv.retro;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import fr.umlv.retro.cache.RetroCache;
+import fr.umlv.retro.classvisitors.updaters.AltLambdaFixture;
+import fr.umlv.retro.classvisitors.updaters.LambdaFixture;
+import fr.umlv.retro.features.Feature;
+import fr.umlv.retro.features.FeaturesStocker;
+import fr.umlv.retro.parsers.OptionsParser;
+import fr.umlv.retro.writers.DirectoryOutput;
+
+/**
+ * Retro-ifies classes through Main.observeClass and Main.applyClass as a run with -target does, and checks
+ * the files written in the output directory and in the cache
+ * @author PJBesnard
+ *
+ */
+public class MainTest {
+	private static final String PACKAGE = "fr/umlv/retro/classvisitors/updaters/";
+
+	@TempDir
+	Path directory;
+
+	/**
+	 * Read the class file of a class
+	 * @param type the class
+	 * @return the content of the class file
+	 * @throws IOException if the class file can't be read
+	 */
+	private static byte[] classFile(Class<?> type) throws IOException {
+		try (InputStream in = type.getResourceAsStream(type.getSimpleName() + ".class")) {
+			return in.readAllBytes();
+		}
+	}
+
+	/**
+	 * Creates a parser which read the given options
+	 * @param options the options, without the files
+	 * @return the parser
+	 */
+	private static OptionsParser parser(String... options) {
+		var parser = new OptionsParser();
+		parser.checkOptions(options);
+		return parser;
+	}
+
+	/**
+	 * Retro-ify a class in the output directory as Main does for a directory
+	 * @param type the class to retro-ify
+	 * @param parser the parser who read the options
+	 * @param cache the cache, or null
+	 * @param obs the features stocker of the input
+	 * @return the messages printed for the class
+	 * @throws IOException if the class can't be read or written
+	 */
+	private String retroify(Class<?> type, OptionsParser parser, RetroCache cache, FeaturesStocker obs) throws IOException {
+		var messages = new ByteArrayOutputStream();
+		var stocker = new FeaturesStocker();
+		try (var output = new DirectoryOutput(directory.resolve("RetroTarget").toString());
+				var out = new PrintStream(messages, true)) {
+			var main = new Main(type.getName().replace('.', '/') + ".class", classFile(type), output, cache, out);
+			main.observeClass(parser, DetectorFactory.createDetectors(stocker), stocker);
+			Main.applyClass(main, parser, obs);
+		}
+		return messages.toString();
+	}
+
+	/**
+	 * Gets the names of the files written in the package of the fixtures
+	 * @return the sorted names of the written files
+	 * @throws IOException if the directory can't be listed
+	 */
+	private List<String> written() throws IOException {
+		List<String> names = new ArrayList<>();
+		try (Stream<Path> files = Files.list(directory.resolve("RetroTarget").resolve(PACKAGE))) {
+			files.forEach(file -> names.add(file.getFileName().toString()));
+		}
+		names.sort(null);
+		return names;
+	}
+
+	/**
+	 * Read a written class file
+	 * @param name the name of the class file in the package of the fixtures
+	 * @return the reader of the class file
+	 * @throws IOException if the class file can't be read
+	 */
+	private ClassReader writtenClass(String name) throws IOException {
+		return new ClassReader(Files.readAllBytes(directory.resolve("RetroTarget").resolve(PACKAGE).resolve(name)));
+	}
+
+	/**
+	 * Test if a method of a class has frames
+	 * @param reader the reader of the class
+	 * @return True if a method has a StackMapTable, False either
+	 */
+	private static boolean hasFrames(ClassReader reader) {
+		boolean[] found = { false };
+		reader.accept(new ClassVisitor(Opcodes.ASM7) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				return new MethodVisitor(Opcodes.ASM7) {
+					@Override
+					public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+						found[0] = true;
+					}
+				};
+			}
+		}, 0);
+		return found[0];
+	}
+
+	/**
+	 * Test if a method of a class has an invokedynamic instruction
+	 * @param reader the reader of the class
+	 * @return True if an invokedynamic is left, False either
+	 */
+	private static boolean hasInvokeDynamic(ClassReader reader) {
+		boolean[] found = { false };
+		reader.accept(new ClassVisitor(Opcodes.ASM7) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				return new MethodVisitor(Opcodes.ASM7) {
+					@Override
+					public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+						found[0] = true;
+					}
+				};
+			}
+		}, 0);
+		return found[0];
+	}
+
+	@Test
+	public void lambdasAreLoweredNextToTheirClassWithoutFramesForJava5() throws IOException {
+		var obs = new FeaturesStocker();
+		String messages = retroify(LambdaFixture.class, parser("-target", "5"), null, obs);
+		assertTrue(messages.contains("retro-ified successfully"), messages);
+		assertTrue(obs.count(Feature.LAMBDA) > 0);
+		List<String> expected = new ArrayList<>();
+		expected.add("LambdaFixture.class");
+		for (int i = 0; i < 12; i++) {
+			expected.add("LambdaFixture$$Lambda$" + i + ".class");
+		}
+		expected.sort(null);
+		assertEquals(expected, written());
+		for (String name : expected) {
+			ClassReader reader = writtenClass(name);
+			assertEquals(49, reader.readUnsignedShort(6), name);
+			assertFalse(hasFrames(reader), name);
+			assertFalse(hasInvokeDynamic(reader), name);
+		}
+	}
+
+	@Test
+	public void loweredClassKeepsItsFramesForJava7() throws IOException {
+		retroify(LambdaFixture.class, parser("-target", "7"), null, new FeaturesStocker());
+		ClassReader reader = writtenClass("LambdaFixture.class");
+		assertEquals(51, reader.readUnsignedShort(6));
+		assertTrue(hasFrames(reader));
+		assertFalse(hasInvokeDynamic(reader));
+		assertEquals(13, written().size());
+	}
+
+	@Test
+	public void lambdasWhichAreNotLoweredForbidTheTarget() throws IOException {
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> retroify(AltLambdaFixture.class, parser("-target", "7"), null, new FeaturesStocker()));
+		assertTrue(e.getMessage().startsWith("Feature LAMBDA"), e.getMessage());
+		assertFalse(Files.exists(directory.resolve("RetroTarget").resolve(PACKAGE)));
+	}
+
+	@Test
+	public void classesWithLambdaClassesAreNotCached() throws IOException {
+		var parser = parser("-target", "7");
+		var cache = new RetroCache(directory.resolve("cache").toString(), "test", 7, List.of(), true);
+		retroify(LambdaFixture.class, parser, cache, new FeaturesStocker());
+		assertNull(cache.load(cache.key(classFile(LambdaFixture.class))));
+		retroify(DetectionChain.class, parser, cache, new FeaturesStocker());
+		assertNotNull(cache.load(cache.key(classFile(DetectionChain.class))));
+		assertEquals(13, written().size());
+	}
+}
@@ -0,0 +1,134 @@
+package fr.umlv.retro.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import fr.umlv.retro.features.CodeFeature;
+import fr.umlv.retro.features.Feature;
+
+/**
+ * Stores entries in a RetroCache and loads them again
+ * @author PJBesnard
+ *
+ */
+public class RetroCacheTest {
+	private static final byte[] CLASS = { (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 52 };
+
+	@TempDir
+	Path directory;
+
+	/**
+	 * Creates features with and without method, line and payload
+	 * @return the features
+	 */
+	private static List<CodeFeature> features() {
+		return List.of(
+				new CodeFeature(52, Feature.LAMBDA, "a/A", "run", "()V", 12,
+						List.of("()Ljava/lang/Runnable;", "a/A", "lambda$run$0", "()V")),
+				new CodeFeature(53, Feature.CONCATENATION, "a/A", "toString", "()Ljava/lang/String;", -1, List.of("x=\u0001, é")),
+				new CodeFeature(55, Feature.NESTMATES, "a/A$B", null, null, -1, List.of("nestmate of", "a/A")),
+				new CodeFeature(58, Feature.RECORD, "a/R", null, null, -1, List.of()));
+	}
+
+	/**
+	 * Check that two lists of features have the same fields
+	 * @param expected the expected features
+	 * @param actual the features read
+	 */
+	private static void assertSameFeatures(List<CodeFeature> expected, List<CodeFeature> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			CodeFeature e = expected.get(i);
+			CodeFeature a = actual.get(i);
+			assertEquals(e.getFeature(), a.getFeature());
+			assertEquals(e.getClassVersion(), a.getClassVersion());
+			assertEquals(e.getOwner(), a.getOwner());
+			assertEquals(e.getMethod(), a.getMethod());
+			assertEquals(e.getDescriptor(), a.getDescriptor());
+			assertEquals(e.getLine(), a.getLine());
+			assertEquals(e.getPayload(), a.getPayload());
+			assertEquals(e.getLog(), a.getLog());
+		}
+	}
+
+	/**
+	 * Find the files of the entries of the cache
+	 * @return the files of the entries
+	 * @throws IOException if the cache can't be walked
+	 */
+	private Stream<Path> entries() throws IOException {
+		return Files.walk(directory).filter(Files::isRegularFile);
+	}
+
+	@Test
+	public void storedEntryIsLoaded() throws IOException {
+		RetroCache cache = new RetroCache(directory.toString(), "1", 7, List.of(), true);
+		String key = cache.key(CLASS);
+		assertNull(cache.load(key));
+		cache.store(key, features(), CLASS);
+		CachedClass cached = cache.load(key);
+		assertSameFeatures(features(), cached.getFeatures());
+		assertArrayEquals(CLASS, cached.getBytes());
+	}
+
+	@Test
+	public void classNotRewrittenIsLoadedWithoutBytes() throws IOException {
+		RetroCache cache = new RetroCache(directory.toString(), "1", 0, List.of(), true);
+		String key = cache.key(CLASS);
+		cache.store(key, List.of(), null);
+		CachedClass cached = cache.load(key);
+		assertEquals(List.of(), cached.getFeatures());
+		assertNull(cached.getBytes());
+	}
+
+	@Test
+	public void keyDependsOnTheSettings() throws IOException {
+		String key = new RetroCache(directory.toString(), "1", 7, List.of("LAMBDA", "RECORD"), true).key(CLASS);
+		assertEquals(key, new RetroCache(directory.toString(), "1", 7, List.of("RECORD", "LAMBDA"), true).key(CLASS));
+		assertNotEquals(key, new RetroCache(directory.toString(), "2", 7, List.of("LAMBDA", "RECORD"), true).key(CLASS));
+		assertNotEquals(key, new RetroCache(directory.toString(), "1", 8, List.of("LAMBDA", "RECORD"), true).key(CLASS));
+		assertNotEquals(key, new RetroCache(directory.toString(), "1", 7, List.of("LAMBDA"), true).key(CLASS));
+		assertNotEquals(key, new RetroCache(directory.toString(), "1", 7, List.of("LAMBDA", "RECORD"), false).key(CLASS));
+		assertNotEquals(key, new RetroCache(directory.toString(), "1", 7, List.of("LAMBDA", "RECORD"), true).key(new byte[8]));
+	}
+
+	@Test
+	public void truncatedEntryIsAMiss() throws IOException {
+		RetroCache cache = new RetroCache(directory.toString(), "1", 7, List.of(), true);
+		String key = cache.key(CLASS);
+		cache.store(key, features(), CLASS);
+		Path entry;
+		try (Stream<Path> entries = entries()) {
+			entry = entries.findFirst().orElseThrow();
+		}
+		byte[] bytes = Files.readAllBytes(entry);
+		for (int length : new int[] { 0, 3, 8, bytes.length / 2, bytes.length - 1 }) {
+			Files.write(entry, Arrays.copyOf(bytes, length));
+			assertNull(cache.load(key), "length " + length);
+		}
+	}
+
+	@Test
+	public void entryWhichCantBeWrittenIsIgnored() throws IOException {
+		RetroCache cache = new RetroCache(directory.toString(), "1", 7, List.of(), true);
+		String key = cache.key(CLASS);
+		Files.write(directory.resolve(key.substring(0, 2)), new byte[0]);
+		cache.store(key, features(), CLASS);
+		assertNull(cache.load(key));
+		try (Stream<Path> entries = entries()) {
+			assertEquals(1, entries.count());
+		}
+	}
+}
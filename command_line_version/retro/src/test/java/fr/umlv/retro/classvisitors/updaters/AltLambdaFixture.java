@@ -0,0 +1,21 @@
+package fr.umlv.retro.classvisitors.updaters;
+
+import java.io.Serializable;
+import java.util.function.Supplier;
+
+/**
+ * Class whose call sites use altMetafactory, a serializable lambda and a lambda with a marker interface,
+ * they are not lowered by LambdaLowererTest
+ * @author LBillaut
+ *
+ */
+public class AltLambdaFixture {
+
+	public static Supplier<String> serializable() {
+		return (Supplier<String> & Serializable) () -> "serializable";
+	}
+
+	public static Runnable marker() {
+		return (Runnable & Cloneable) () -> {};
+	}
+}
@@ -0,0 +1,73 @@
+package fr.umlv.retro.classvisitors.updaters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Class whose call sites of the metafactory are lowered by LambdaLowererTest, one kind of call site by method,
+ * and a method whose call sites are in branches, so the class has frames
+ * @author LBillaut
+ *
+ */
+public class LambdaFixture {
+	private final int base;
+
+	public LambdaFixture(int base) {
+		this.base = base;
+	}
+
+	private int add(int value) {
+		return value + base;
+	}
+
+	public static Supplier<String> nonCapturing() {
+		return () -> "constant";
+	}
+
+	public static IntSupplier capturing(int value) {
+		return () -> value * 2;
+	}
+
+	public static Supplier<String> bound(String s) {
+		return s::trim;
+	}
+
+	public IntUnaryOperator privateThis() {
+		return this::add;
+	}
+
+	public IntUnaryOperator capturingThis() {
+		return value -> add(value) * 10;
+	}
+
+	public static Supplier<List<String>> constructor() {
+		return ArrayList::new;
+	}
+
+	public static Function<String, Integer> boxing() {
+		return String::length;
+	}
+
+	public static IntFunction<Long> widening() {
+		return Long::valueOf;
+	}
+
+	public static ToLongFunction<Integer> unboxing() {
+		return Math::abs;
+	}
+
+	public static BiFunction<Integer, Integer, Integer> sum() {
+		return Integer::sum;
+	}
+
+	public static Supplier<String> branch(int value) {
+		return value < 0 ? () -> "negative" : () -> "positive";
+	}
+}
@@ -0,0 +1,196 @@
+package fr.umlv.retro.classvisitors.updaters;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import fr.umlv.retro.parsers.FeatureScanner;
+
+/**
+ * Lowers the lambdas of LambdaFixture below Java 8 and runs the lowered classes, which are verified when
+ * they are loaded
+ * @author LBillaut
+ *
+ */
+public class LambdaLowererTest {
+	private static final String FIXTURE = "fr/umlv/retro/classvisitors/updaters/LambdaFixture";
+
+	/**
+	 * Loads the lowered classes instead of the classes of the test
+	 */
+	private static class LoweredLoader extends ClassLoader {
+		private final Map<String, byte[]> classes;
+
+		LoweredLoader(Map<String, byte[]> classes) {
+			super(LambdaLowererTest.class.getClassLoader());
+			this.classes = classes;
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			byte[] bytes = classes.get(name.replace('.', '/'));
+			if (bytes == null) {
+				return super.loadClass(name, resolve);
+			}
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> loaded = findLoadedClass(name);
+				return loaded != null ? loaded : defineClass(name, bytes, 0, bytes.length);
+			}
+		}
+	}
+
+	/**
+	 * Read the class file of a fixture
+	 * @param fixture the class of the fixture
+	 * @return the content of the class file
+	 * @throws IOException if the class file can't be read
+	 */
+	private static byte[] classFile(Class<?> fixture) throws IOException {
+		try (InputStream in = fixture.getResourceAsStream(fixture.getSimpleName() + ".class")) {
+			return in.readAllBytes();
+		}
+	}
+
+	/**
+	 * Visit a class with a LambdaLowerer as Main does
+	 * @param bytes the content of the class file
+	 * @param target the target version
+	 * @param writer the writer of the lowered class
+	 * @return the lowerer which visited the class
+	 */
+	private static LambdaLowerer lowerer(byte[] bytes, int target, ClassWriter writer) {
+		ClassReader reader = new ClassReader(bytes);
+		VersionUpdater updater = new VersionUpdater(target);
+		updater.SetClassVisitor(writer);
+		LambdaLowerer lowerer = new LambdaLowerer(target, new FeatureScanner(reader).methodsWithFeatureCode());
+		lowerer.SetClassVisitor(updater);
+		reader.accept(lowerer, target < 6 ? ClassReader.SKIP_FRAMES : 0);
+		return lowerer;
+	}
+
+	/**
+	 * Lower the lambdas of LambdaFixture as Main does
+	 * @param target the target version
+	 * @return the lowered LambdaFixture and its generated classes by internal name
+	 * @throws IOException if LambdaFixture can't be read
+	 */
+	private static Map<String, byte[]> lower(int target) throws IOException {
+		ClassWriter writer = new ClassWriter(0);
+		LambdaLowerer lowerer = lowerer(classFile(LambdaFixture.class), target, writer);
+		assertTrue(lowerer.isLowered());
+		assertEquals(12, lowerer.getLambdaClasses().size());
+		Map<String, byte[]> classes = new HashMap<>(lowerer.getLambdaClasses());
+		classes.put(FIXTURE, writer.toByteArray());
+		return classes;
+	}
+
+	/**
+	 * Test if a class contains an invokedynamic instruction
+	 * @param bytes the content of the class file
+	 * @return True if an invokedynamic is left, False either
+	 */
+	private static boolean hasInvokeDynamic(byte[] bytes) {
+		boolean[] found = { false };
+		new ClassReader(bytes).accept(new ClassVisitor(Opcodes.ASM7) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				return new MethodVisitor(Opcodes.ASM7) {
+					@Override
+					public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+						found[0] = true;
+					}
+				};
+			}
+		}, 0);
+		return found[0];
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 5, 6, 7 })
+	public void noInvokeDynamicIsLeft(int target) throws IOException {
+		for (Map.Entry<String, byte[]> entry : lower(target).entrySet()) {
+			assertFalse(hasInvokeDynamic(entry.getValue()), entry.getKey());
+			assertEquals(44 + target, new ClassReader(entry.getValue()).readUnsignedShort(6), entry.getKey());
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 5, 6, 7 })
+	@SuppressWarnings("unchecked")
+	public void loweredCallSitesRun(int target) throws ReflectiveOperationException, IOException {
+		Map<String, byte[]> classes = lower(target);
+		Class<?> fixture = new LoweredLoader(classes).loadClass(FIXTURE.replace('/', '.'));
+		Object instance = fixture.getConstructor(int.class).newInstance(5);
+
+		Supplier<String> nonCapturing = (Supplier<String>) fixture.getMethod("nonCapturing").invoke(null);
+		assertTrue(classes.containsKey(nonCapturing.getClass().getName().replace('.', '/')));
+		assertEquals("constant", nonCapturing.get());
+		assertSame(nonCapturing, fixture.getMethod("nonCapturing").invoke(null));
+
+		IntSupplier capturing = (IntSupplier) fixture.getMethod("capturing", int.class).invoke(null, 21);
+		assertTrue(classes.containsKey(capturing.getClass().getName().replace('.', '/')));
+		assertEquals(42, capturing.getAsInt());
+		assertNotSame(capturing, fixture.getMethod("capturing", int.class).invoke(null, 21));
+
+		Supplier<String> bound = (Supplier<String>) fixture.getMethod("bound", String.class).invoke(null, " bound ");
+		assertEquals("bound", bound.get());
+
+		IntUnaryOperator privateThis = (IntUnaryOperator) fixture.getMethod("privateThis").invoke(instance);
+		assertEquals(6, privateThis.applyAsInt(1));
+		IntUnaryOperator capturingThis = (IntUnaryOperator) fixture.getMethod("capturingThis").invoke(instance);
+		assertEquals(60, capturingThis.applyAsInt(1));
+
+		Supplier<List<String>> constructor = (Supplier<List<String>>) fixture.getMethod("constructor").invoke(null);
+		List<String> list = constructor.get();
+		assertTrue(list.isEmpty());
+		assertNotSame(list, constructor.get());
+
+		Function<String, Integer> boxing = (Function<String, Integer>) fixture.getMethod("boxing").invoke(null);
+		assertEquals(3, boxing.apply("abc"));
+		IntFunction<Long> widening = (IntFunction<Long>) fixture.getMethod("widening").invoke(null);
+		assertEquals(7L, widening.apply(7));
+		ToLongFunction<Integer> unboxing = (ToLongFunction<Integer>) fixture.getMethod("unboxing").invoke(null);
+		assertEquals(4L, unboxing.applyAsLong(-4));
+		BiFunction<Integer, Integer, Integer> sum = (BiFunction<Integer, Integer, Integer>) fixture.getMethod("sum").invoke(null);
+		assertEquals(5, sum.apply(2, 3));
+
+		Supplier<String> negative = (Supplier<String>) fixture.getMethod("branch", int.class).invoke(null, -1);
+		assertEquals("negative", negative.get());
+		Supplier<String> positive = (Supplier<String>) fixture.getMethod("branch", int.class).invoke(null, 1);
+		assertEquals("positive", positive.get());
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 5, 6, 7 })
+	public void altMetafactoryIsNotLowered(int target) throws IOException {
+		ClassWriter writer = new ClassWriter(0);
+		LambdaLowerer lowerer = lowerer(classFile(AltLambdaFixture.class), target, writer);
+		assertFalse(lowerer.isLowered());
+		assertTrue(lowerer.getLambdaClasses().isEmpty());
+		assertTrue(hasInvokeDynamic(writer.toByteArray()));
+	}
+}
@@ -0,0 +1,116 @@
+package fr.umlv.retro.parsers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import fr.umlv.retro.DetectionChain;
+import fr.umlv.retro.DetectorFactory;
+import fr.umlv.retro.classvisitors.updaters.LambdaFixture;
+import fr.umlv.retro.features.CodeFeature;
+import fr.umlv.retro.features.FeaturesStocker;
+import fr.umlv.retro.writers.JarOutput;
+
+/**
+ * Compares the features found in the methods kept by a FeatureScanner with the features found in all the
+ * methods by the detection chain, on classes of the project and of the JDK
+ * @author LBillaut
+ *
+ */
+public class FeatureScannerTest {
+	private static final List<Class<?>> SAMPLES = List.of(LambdaFixture.class, FileParser.class, JarOutput.class,
+			FeaturesStocker.class, MappedJarReader.class, DetectionChain.class, Object.class, String.class,
+			HashMap.class, ArrayList.class, Opcodes.class);
+
+	/**
+	 * Read the class file of a class
+	 * @param type the class
+	 * @return the reader of its class file
+	 * @throws IOException if the class file can't be read
+	 */
+	private static ClassReader readerOf(Class<?> type) throws IOException {
+		try (InputStream in = type.getResourceAsStream("/" + type.getName().replace('.', '/') + ".class")) {
+			return new ClassReader(in.readAllBytes());
+		}
+	}
+
+	/**
+	 * Gets all the methods of a class
+	 * @param reader the reader of the class
+	 * @return the name followed by the descriptor of each method
+	 */
+	private static Set<String> allMethods(ClassReader reader) {
+		Set<String> methods = new HashSet<>();
+		reader.accept(new ClassVisitor(Opcodes.ASM7) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				methods.add(name + descriptor);
+				return null;
+			}
+		}, ClassReader.SKIP_CODE);
+		return methods;
+	}
+
+	/**
+	 * Detect the features of the given methods of a class
+	 * @param reader the reader of the class
+	 * @param methods the methods to detect
+	 * @return the logs of the features found
+	 */
+	private static List<String> detect(ClassReader reader, Set<String> methods) {
+		var stocker = new FeaturesStocker();
+		stocker.beginClass();
+		reader.accept(DetectionChain.createDetectionChain(DetectorFactory.createDetectors(stocker), null, methods), ClassReader.SKIP_FRAMES);
+		stocker.endClass();
+		List<String> logs = new ArrayList<>();
+		for (CodeFeature feature : stocker.getFeatures()) {
+			logs.add(feature.getLog());
+		}
+		return logs;
+	}
+
+	@Test
+	public void scannedMethodsHaveAllTheFeatures() throws IOException {
+		for (Class<?> sample : SAMPLES) {
+			ClassReader reader = readerOf(sample);
+			var scanner = new FeatureScanner(reader);
+			List<String> expected = detect(reader, allMethods(reader));
+			assertEquals(expected, detect(reader, scanner.methodsWithFeatureCode()), sample.getName());
+			if (!scanner.mayContainFeatures()) {
+				assertTrue(expected.isEmpty(), sample.getName());
+			}
+		}
+	}
+
+	@Test
+	public void classesWithoutFeatureAreSkipped() throws IOException {
+		for (Class<?> sample : List.of(Object.class, Opcodes.class)) {
+			var scanner = new FeatureScanner(readerOf(sample));
+			assertFalse(scanner.mayContainFeatures(), sample.getName());
+			assertTrue(scanner.methodsWithFeatureCode().isEmpty(), sample.getName());
+		}
+	}
+
+	@Test
+	public void methodsWithLambdasAreKept() throws IOException {
+		ClassReader reader = readerOf(LambdaFixture.class);
+		var scanner = new FeatureScanner(reader);
+		assertTrue(scanner.mayContainFeatures());
+		assertFalse(scanner.methodsWithFeatureCode().isEmpty());
+		assertFalse(detect(reader, scanner.methodsWithFeatureCode()).isEmpty());
+	}
+}
@@ -0,0 +1,94 @@
+package fr.umlv.retro.parsers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Reads streams of frames with a FrameParser, well formed, truncated and with an invalid length
+ * @author LBillaut
+ *
+ */
+public class FrameParserTest {
+
+	/**
+	 * Encode classes as frames
+	 * @param classes the classes to encode
+	 * @return the stream of frames
+	 * @throws IOException never, the stream is in memory
+	 */
+	private static byte[] frames(List<byte[]> classes) throws IOException {
+		var bytes = new ByteArrayOutputStream();
+		var out = new DataOutputStream(bytes);
+		for (byte[] c : classes) {
+			out.writeInt(c.length);
+			out.write(c);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Read a stream of frames
+	 * @param stream the stream of frames
+	 * @param names the list which receives the names of the classes
+	 * @param classes the list which receives the classes
+	 * @throws IOException if the stream is malformed
+	 */
+	private static void read(byte[] stream, List<String> names, List<byte[]> classes) throws IOException {
+		new FrameParser().readFrames(new ByteArrayInputStream(stream), (className, bytes) -> {
+			names.add(className);
+			classes.add(bytes);
+		});
+	}
+
+	@Test
+	public void framesAreReadInOrder() throws IOException {
+		List<byte[]> expected = List.of(new byte[] { 1, 2, 3 }, new byte[0], new byte[100_000]);
+		List<String> names = new ArrayList<>();
+		List<byte[]> classes = new ArrayList<>();
+		read(frames(expected), names, classes);
+		assertEquals(List.of("stdin#0", "stdin#1", "stdin#2"), names);
+		for (int i = 0; i < expected.size(); i++) {
+			assertArrayEquals(expected.get(i), classes.get(i), names.get(i));
+		}
+	}
+
+	@Test
+	public void emptyStreamHasNoFrame() throws IOException {
+		List<String> names = new ArrayList<>();
+		read(new byte[0], names, new ArrayList<>());
+		assertEquals(List.of(), names);
+	}
+
+	@Test
+	public void truncatedFrameIsRejected() throws IOException {
+		byte[] stream = frames(List.of(new byte[] { 1, 2 }, new byte[] { 3, 4, 5 }));
+		List<String> names = new ArrayList<>();
+		IOException e = assertThrows(IOException.class, () -> read(Arrays.copyOf(stream, stream.length - 1), names, new ArrayList<>()));
+		assertEquals("Truncated frame 1", e.getMessage());
+		assertEquals(List.of("stdin#0"), names);
+	}
+
+	@Test
+	public void truncatedLengthIsRejected() throws IOException {
+		byte[] stream = frames(List.of(new byte[] { 1, 2 }));
+		assertThrows(IOException.class, () -> read(Arrays.copyOf(stream, stream.length + 2), new ArrayList<>(), new ArrayList<>()));
+	}
+
+	@Test
+	public void negativeLengthIsRejected() {
+		byte[] stream = { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFE, 1, 2 };
+		IOException e = assertThrows(IOException.class, () -> read(stream, new ArrayList<>(), new ArrayList<>()));
+		assertEquals("Invalid frame length -2", e.getMessage());
+	}
+}
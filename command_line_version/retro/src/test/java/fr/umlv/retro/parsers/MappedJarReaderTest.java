@@ -0,0 +1,211 @@
+package fr.umlv.retro.parsers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Reads jars written by ZipOutputStream with a MappedJarReader and compares the entries with the ones
+ * read by JarFile, then checks that the corrupted jars are rejected
+ * @author LBillaut
+ *
+ */
+public class MappedJarReaderTest {
+	@TempDir
+	Path directory;
+
+	/**
+	 * Creates some bytes which can't be compressed much
+	 * @param seed the seed of the bytes
+	 * @param length the number of bytes
+	 * @return the bytes
+	 */
+	public static byte[] content(int seed, int length) {
+		byte[] bytes = new byte[length];
+		new Random(seed).nextBytes(bytes);
+		for (int i = 0; i < length; i += 2) {
+			bytes[i] = 'a';
+		}
+		return bytes;
+	}
+
+	/**
+	 * Write a jar, the entries whose name starts with "stored/" are stored, the others are deflated.
+	 * The entries have a fixed time, so the same entries always give the same jar
+	 * @param jar the jar to write
+	 * @param entries the content of the entries by name, null for a directory
+	 * @throws IOException if the jar can't be written
+	 */
+	public static void writeJar(Path jar, Map<String, byte[]> entries) throws IOException {
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+			for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+				ZipEntry zipEntry = new ZipEntry(entry.getKey());
+				zipEntry.setTime(0L);
+				byte[] bytes = entry.getValue() == null ? new byte[0] : entry.getValue();
+				if (entry.getKey().startsWith("stored/")) {
+					CRC32 crc = new CRC32();
+					crc.update(bytes);
+					zipEntry.setMethod(ZipEntry.STORED);
+					zipEntry.setSize(bytes.length);
+					zipEntry.setCompressedSize(bytes.length);
+					zipEntry.setCrc(crc.getValue());
+				}
+				out.putNextEntry(zipEntry);
+				out.write(bytes);
+				out.closeEntry();
+			}
+		}
+	}
+
+	/**
+	 * Gets the entries of the sample jar
+	 * @return the content of the entries by name
+	 */
+	public static Map<String, byte[]> sampleEntries() {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("META-INF/", null);
+		entries.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n\r\n".getBytes());
+		entries.put("a/A.class", content(1, 3000));
+		entries.put("stored/B.class", content(2, 500));
+		entries.put("stored/empty.txt", new byte[0]);
+		entries.put("a/Empty.class", new byte[0]);
+		entries.put("res/large.bin", content(3, 200_000));
+		for (int i = 0; i < 100; i++) {
+			entries.put("many/C" + i + ".class", content(10 + i, 100 + i));
+		}
+		return entries;
+	}
+
+	/**
+	 * Find the offset of the central directory header of the last entry
+	 * @param bytes the content of the jar
+	 * @return the offset of the header
+	 */
+	private static int lastCentralHeader(byte[] bytes) {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = bytes.length - 4; i >= 0; i--) {
+			if (buffer.getInt(i) == 0x02014b50) {
+				return i;
+			}
+		}
+		throw new AssertionError("no central directory");
+	}
+
+	/**
+	 * Write a jar of one class, then change an int of its central directory header
+	 * @param offset the offset of the int in the header
+	 * @param value the new value of the int
+	 * @return the corrupted jar
+	 * @throws IOException if the jar can't be written
+	 */
+	private Path corrupt(int offset, int value) throws IOException {
+		Path jar = directory.resolve("corrupted.jar");
+		writeJar(jar, Map.of("A.class", content(4, 1000)));
+		byte[] bytes = Files.readAllBytes(jar);
+		ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(lastCentralHeader(bytes) + offset, value);
+		Files.write(jar, bytes);
+		return jar;
+	}
+
+	@Test
+	public void entriesAreTheOnesOfJarFile() throws IOException {
+		Path jar = directory.resolve("sample.jar");
+		writeJar(jar, sampleEntries());
+		try (MappedJarReader reader = new MappedJarReader(jar.toString()); JarFile jarFile = new JarFile(jar.toFile())) {
+			List<String> names = new ArrayList<>();
+			for (JarRecord record : reader.getRecords()) {
+				names.add(record.getName());
+				JarEntry entry = jarFile.getJarEntry(record.getName());
+				assertEquals(entry.getSize(), record.getSize(), record.getName());
+				assertEquals(entry.getCrc(), record.getCrc(), record.getName());
+				if (!record.isDirectory()) {
+					try (InputStream in = jarFile.getInputStream(entry)) {
+						assertArrayEquals(in.readAllBytes(), reader.read(record), record.getName());
+					}
+				}
+			}
+			assertEquals(Collections.list(jarFile.entries()).stream().map(JarEntry::getName).collect(Collectors.toList()), names);
+		}
+	}
+
+	@Test
+	public void classesAreGivenInTheOrderOfTheJar() throws IOException {
+		Path jar = directory.resolve("sample.jar");
+		Map<String, byte[]> entries = sampleEntries();
+		writeJar(jar, entries);
+		List<String> expected = new ArrayList<>();
+		entries.keySet().stream().filter(name -> name.endsWith(".class")).forEach(expected::add);
+		List<String> names = new ArrayList<>();
+		try (MappedJarReader reader = new MappedJarReader(jar.toString())) {
+			reader.readClasses(ForkJoinPool.commonPool(), 1024, (name, bytes) -> {
+				names.add(name);
+				assertArrayEquals(entries.get(name), bytes, name);
+			});
+		}
+		assertEquals(expected, names);
+	}
+
+	@Test
+	public void wrongCrcIsRejected() throws IOException {
+		Path jar = corrupt(16, 0x12345678);
+		try (MappedJarReader reader = new MappedJarReader(jar.toString())) {
+			assertThrows(ZipException.class, () -> reader.read(reader.getRecords().get(0)));
+		}
+	}
+
+	@Test
+	public void wrongSizeIsRejected() throws IOException {
+		for (int size : new int[] { 999, 1001 }) {
+			Path jar = corrupt(24, size);
+			try (MappedJarReader reader = new MappedJarReader(jar.toString())) {
+				assertThrows(ZipException.class, () -> reader.read(reader.getRecords().get(0)));
+			}
+		}
+	}
+
+	@Test
+	public void entryOf2GiBIsRejected() throws IOException {
+		Path jar = corrupt(24, 0x80000000);
+		assertThrows(ZipException.class, () -> new MappedJarReader(jar.toString()).close());
+	}
+
+	@Test
+	public void truncatedCentralDirectoryIsRejected() throws IOException {
+		Path jar = corrupt(28, 0xFFFF);
+		assertThrows(ZipException.class, () -> new MappedJarReader(jar.toString()).close());
+	}
+
+	@Test
+	public void notAJarIsRejected() throws IOException {
+		Path jar = directory.resolve("text.jar");
+		try (OutputStream out = Files.newOutputStream(jar)) {
+			out.write(content(5, 100));
+		}
+		assertThrows(ZipException.class, () -> new MappedJarReader(jar.toString()).close());
+	}
+}
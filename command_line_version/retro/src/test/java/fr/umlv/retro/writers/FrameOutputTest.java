@@ -0,0 +1,115 @@
+package fr.umlv.retro.writers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import fr.umlv.retro.features.CodeFeature;
+import fr.umlv.retro.features.Feature;
+import fr.umlv.retro.parsers.FrameParser;
+
+/**
+ * Writes frames with a FrameOutput and decodes them, the head of a frame with a class is also read
+ * by a FrameParser
+ * @author PJBesnard
+ *
+ */
+public class FrameOutputTest {
+	private static final CodeFeature CONCATENATION = new CodeFeature(55, Feature.CONCATENATION, "a/A", "m", "()V", 3, List.of("x=\u0001"));
+	private static final CodeFeature NESTMATE = new CodeFeature(55, Feature.NESTMATES, "a/A$B", null, null, -1, List.of("nestmate of", "a/A"));
+
+	/**
+	 * Read a string written as its length followed by its UTF-8 bytes
+	 * @param in the stream of frames
+	 * @return the string
+	 * @throws IOException if the stream ends
+	 */
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Read the features of a frame and check them
+	 * @param in the stream of frames
+	 * @param expected the features of the frame
+	 * @throws IOException if the stream ends
+	 */
+	private static void checkFeatures(DataInputStream in, List<CodeFeature> expected) throws IOException {
+		assertEquals(expected.size(), in.readInt());
+		for (CodeFeature feature : expected) {
+			assertEquals(feature.getName(), readString(in));
+			assertEquals(feature.getClassVersion(), in.readInt());
+			assertEquals(feature.getLog(), readString(in));
+		}
+	}
+
+	@Test
+	public void frameWithGeneratedClasses() throws IOException {
+		var bytes = new ByteArrayOutputStream();
+		try (var output = new FrameOutput(bytes)) {
+			output.write("stdin#0", new byte[] { 1, 2, 3 });
+			output.write("a/A$$Lambda$1.class", new byte[] { 4 });
+			output.write("a/A$$Lambda$2.class", new byte[] { 5, 6 });
+			output.endFrame("unused", List.of(CONCATENATION, NESTMATE));
+		}
+		var in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		byte[] head = new byte[in.readInt()];
+		in.readFully(head);
+		assertArrayEquals(new byte[] { 1, 2, 3 }, head);
+		assertEquals(2, in.readInt());
+		assertEquals("a/A$$Lambda$1.class", readString(in));
+		assertEquals(1, in.readInt());
+		assertEquals(4, in.readByte());
+		assertEquals("a/A$$Lambda$2.class", readString(in));
+		assertEquals(2, in.readInt());
+		assertEquals(5, in.readByte());
+		assertEquals(6, in.readByte());
+		checkFeatures(in, List.of(CONCATENATION, NESTMATE));
+		assertEquals(-1, in.read());
+	}
+
+	@Test
+	public void frameWithoutClassHasTheMessage() throws IOException {
+		var bytes = new ByteArrayOutputStream();
+		try (var output = new FrameOutput(bytes)) {
+			output.endFrame("Version 3 not supported", List.of(NESTMATE));
+			output.write("stdin#1", new byte[] { 7 });
+			output.write("a/A$$Lambda$1.class", new byte[] { 8 });
+			output.discardClasses();
+			output.endFrame("invalid class file, \u00e9", List.of());
+		}
+		var in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals(-1, in.readInt());
+		assertEquals("Version 3 not supported", readString(in));
+		assertEquals(0, in.readInt());
+		checkFeatures(in, List.of(NESTMATE));
+		assertEquals(-1, in.readInt());
+		assertEquals("invalid class file, \u00e9", readString(in));
+		assertEquals(0, in.readInt());
+		checkFeatures(in, List.of());
+		assertEquals(-1, in.read());
+	}
+
+	@Test
+	public void classesOfTheFramesAreFramesForTheParser() throws IOException {
+		var bytes = new ByteArrayOutputStream();
+		try (var output = new FrameOutput(bytes)) {
+			output.write("stdin#0", new byte[] { 9, 10 });
+			output.endFrame("unused", List.of());
+		}
+		byte[] frame = bytes.toByteArray();
+		byte[][] read = new byte[1][];
+		new FrameParser().readFrames(new ByteArrayInputStream(frame, 0, frame.length - 8), (className, c) -> read[0] = c);
+		assertArrayEquals(new byte[] { 9, 10 }, read[0]);
+	}
+}
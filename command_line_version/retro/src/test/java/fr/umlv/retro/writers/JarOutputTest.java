@@ -0,0 +1,142 @@
+package fr.umlv.retro.writers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import fr.umlv.retro.parsers.JarRecord;
+import fr.umlv.retro.parsers.MappedJarReader;
+import fr.umlv.retro.parsers.MappedJarReaderTest;
+
+/**
+ * Writes jars with a JarOutput from a source jar, some classes rewritten and the other entries copied,
+ * and reads them again with ZipFile
+ * @author PJBesnard
+ *
+ */
+public class JarOutputTest {
+	@TempDir
+	Path directory;
+
+	/**
+	 * Gets the new content of a rewritten class
+	 * @param bytes the content in the source jar
+	 * @return the new content
+	 */
+	private static byte[] rewrite(byte[] bytes) {
+		byte[] rewritten = new byte[bytes.length + 1];
+		for (int i = 0; i < bytes.length; i++) {
+			rewritten[i] = (byte) ~bytes[i];
+		}
+		return rewritten;
+	}
+
+	/**
+	 * Retro-ify the sample jar, the classes of the package "many" are rewritten, the other entries are copied
+	 * @param level the compression level
+	 * @param buffer the buffer of the JarOutput
+	 * @return the written jar
+	 * @throws IOException if a jar can't be read or written
+	 */
+	private Path retroify(int level, int buffer) throws IOException {
+		Path source = directory.resolve("source.jar");
+		MappedJarReaderTest.writeJar(source, MappedJarReaderTest.sampleEntries());
+		Path target = directory.resolve("out").resolve("target.jar");
+		try (MappedJarReader reader = new MappedJarReader(source.toString());
+				JarOutput output = new JarOutput(target.toString(), reader, level, ForkJoinPool.commonPool(), buffer)) {
+			for (JarRecord record : reader.getRecords()) {
+				if (record.getName().startsWith("many/")) {
+					output.write(record.getName(), rewrite(reader.read(record)));
+				} else {
+					output.copy(record);
+				}
+			}
+			output.finish();
+		}
+		return target;
+	}
+
+	/**
+	 * Check the written jar against the sample jar
+	 * @param target the written jar
+	 * @param method the method of the rewritten classes
+	 * @throws IOException if a jar can't be read
+	 */
+	private void check(Path target, int method) throws IOException {
+		Map<String, byte[]> entries = MappedJarReaderTest.sampleEntries();
+		try (ZipFile written = new ZipFile(target.toFile()); ZipFile source = new ZipFile(directory.resolve("source.jar").toFile())) {
+			List<String> names = new ArrayList<>();
+			for (ZipEntry entry : Collections.list(written.entries())) {
+				names.add(entry.getName());
+				byte[] expected = entries.get(entry.getName());
+				expected = expected == null ? new byte[0] : expected;
+				if (entry.getName().startsWith("many/")) {
+					expected = rewrite(expected);
+					assertEquals(method, entry.getMethod(), entry.getName());
+				} else {
+					ZipEntry original = source.getEntry(entry.getName());
+					assertEquals(original.getMethod(), entry.getMethod(), entry.getName());
+					assertEquals(original.getCompressedSize(), entry.getCompressedSize(), entry.getName());
+				}
+				try (InputStream in = written.getInputStream(entry)) {
+					assertArrayEquals(expected, in.readAllBytes(), entry.getName());
+				}
+			}
+			assertEquals(new ArrayList<>(entries.keySet()), names);
+		}
+	}
+
+	@Test
+	public void deflatedJarIsReadByZipFile() throws IOException {
+		check(retroify(-1, 16 << 20), ZipEntry.DEFLATED);
+	}
+
+	@Test
+	public void storedJarIsReadByZipFile() throws IOException {
+		check(retroify(0, 16 << 20), ZipEntry.STORED);
+	}
+
+	@Test
+	public void entriesLargerThanTheBufferKeepTheirOrder() throws IOException {
+		check(retroify(9, 1), ZipEntry.DEFLATED);
+	}
+
+	@Test
+	public void sameSourceGivesSameBytes() throws IOException {
+		byte[] first = Files.readAllBytes(retroify(-1, 1024));
+		byte[] second = Files.readAllBytes(retroify(-1, 1024));
+		assertArrayEquals(first, second);
+	}
+
+	@Test
+	public void unfinishedJarIsNotWritten() throws IOException {
+		Path source = directory.resolve("source.jar");
+		MappedJarReaderTest.writeJar(source, MappedJarReaderTest.sampleEntries());
+		Path target = retroify(-1, 1024);
+		byte[] previous = Files.readAllBytes(target);
+		try (MappedJarReader reader = new MappedJarReader(source.toString());
+				JarOutput output = new JarOutput(target.toString(), reader, -1, ForkJoinPool.commonPool(), 1024)) {
+			output.copy(reader.getRecords().get(0));
+			output.write("many/C0.class", new byte[10]);
+		}
+		assertArrayEquals(previous, Files.readAllBytes(target));
+		try (var files = Files.list(target.getParent())) {
+			assertFalse(files.anyMatch(file -> file.getFileName().toString().endsWith(".tmp")));
+		}
+	}
+}